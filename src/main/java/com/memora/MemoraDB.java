@@ -11,6 +11,7 @@ import com.memora.modules.CommandModule;
 import com.memora.modules.EnvironmentModule;
 import com.memora.modules.MemoraModule;
 import com.memora.modules.ServiceModule;
+import com.memora.store.WAL;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -18,8 +19,8 @@ import lombok.extern.slf4j.Slf4j;
 public class MemoraDB {
 
     @Inject
-    public MemoraDB(MemoraNode memoraNode, MemoraServer server) {
-        initiate(memoraNode, server);
+    public MemoraDB(MemoraNode memoraNode, MemoraServer server, WAL wal) {
+        initiate(memoraNode, server, wal);
     }
 
     public static void main(String[] args) {
@@ -37,17 +38,25 @@ public class MemoraDB {
         }
     }
 
-    private void initiate(MemoraNode node, MemoraServer server) {
+    private void initiate(MemoraNode node, MemoraServer server, WAL wal) {
         try {
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 try {
                     server.close();
+                    wal.close();
                 } catch (Exception e) {
                     log.error("Error during node shutdown: {}", e.getMessage());
                 }
             }));
 
             log.info("Starting MemoraDB...");
+            try {
+                node.recover();
+            } catch (RuntimeException e) {
+                // Serving with part of the data missing is worse than not serving
+                log.error("Failed to recover the node's data, aborting startup", e);
+                System.exit(1);
+            }
             server.start(node::start);
         } catch (InterruptedException e) {
             log.error("MemoraDB startup interrupted: {}", e.getMessage());
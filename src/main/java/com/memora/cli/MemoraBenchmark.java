@@ -0,0 +1,483 @@
+package com.memora.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+import com.google.protobuf.ByteString;
+import com.memora.core.MemoraServer;
+import com.memora.core.MemoraServerChannel;
+import com.memora.enums.EvictionStrategy;
+import com.memora.enums.ThreadPool;
+import com.memora.enums.Transport;
+import com.memora.messages.KeyCommand;
+import com.memora.messages.KeyCommandBatch;
+import com.memora.messages.RpcRequest;
+import com.memora.messages.RpcResponse;
+import com.memora.messages.RpcStatus;
+import com.memora.model.CacheEntry;
+import com.memora.model.ServerOptions;
+import com.memora.services.ThreadPoolService;
+import com.memora.store.Bucket;
+import com.memora.store.eviction.EvictionPolicy;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.protobuf.ProtobufDecoder;
+import io.netty.handler.codec.protobuf.ProtobufEncoder;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+
+/**
+ * Stand-alone throughput benchmarks for the storage layer. Each scenario is
+ * run with 1 to 32 threads against a single bucket and prints operations per
+ * second, so scaling with cores is visible at a glance.
+ *
+ * The transport scenario instead starts a server on NIO, then on epoll, that
+ * answers every request with an empty OK, and measures connections accepted
+ * and small request round trips per second against each, from plain blocking
+ * sockets so the client side is the same for both. The pipeline scenario
+ * sends GETs 1, 16 and 128 at a time on each connection to a server running
+ * them on lanes, with a flush per response and with flushes consolidated.
+ *
+ * Usage: java -cp memora-db.jar com.memora.cli.MemoraBenchmark [scenario] [seconds] [policy]
+ */
+public class MemoraBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+    private static final int KEY_SPACE = 1 << 16;
+    private static final int KEY_MASK = KEY_SPACE - 1;
+    private static final long BUDGET = 8L * 1024 * 1024; // Small enough to keep the evictor busy
+    private static final int HOT_KEY_MASK = 15; // Reads hammer 16 keys to expose same-key contention
+    private static final int FOOTPRINT_KEYS = 1_000_000;
+    private static final int FOOTPRINT_VALUE_SIZE = 32;
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final int[] PIPELINE_DEPTHS = {1, 16, 128};
+    private static final int PIPELINE_CONNECTIONS = 4;
+
+    private MemoraBenchmark() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String scenario = args.length > 0 ? args[0].toLowerCase() : "put";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        EvictionStrategy strategy = args.length > 2 ? EvictionStrategy.valueOf(args[2].toUpperCase()) : EvictionStrategy.TINY_LFU;
+
+        CacheEntry[] entries = createEntries();
+
+        switch (scenario) {
+            case "put" -> {
+                System.out.printf("Bucket.put with %s eviction, %d keys, %d MB budget%n", strategy, KEY_SPACE, BUDGET >> 20);
+                for (int threads : THREAD_COUNTS) {
+                    Bucket bucket = new Bucket("benchmark", BUDGET, strategy);
+                    report(threads, measure(threads, seconds, i -> bucket.put(entries[i & KEY_MASK])));
+                }
+            }
+            case "get" -> {
+                System.out.printf("Bucket.get vs. compute-based read, %d hot keys%n", HOT_KEY_MASK + 1);
+                Bucket bucket = new Bucket("benchmark", Long.MAX_VALUE, strategy);
+                ConcurrentHashMap<String, CacheEntry> legacy = new ConcurrentHashMap<>();
+                for (CacheEntry entry : entries) {
+                    bucket.put(entry);
+                    legacy.put(entry.getKey(), entry);
+                }
+                for (int threads : THREAD_COUNTS) {
+                    long current = measure(threads, seconds, i -> bucket.get(entries[i & HOT_KEY_MASK].getKey()));
+                    // The read path before it went lock-free: a compute that takes the bin lock
+                    long baseline = measure(threads, seconds, i -> legacy.compute(entries[i & HOT_KEY_MASK].getKey(), (k, v) -> {
+                        if (v != null && v.getTtl() != -1 && System.currentTimeMillis() > v.getTtl()) {
+                            return null;
+                        }
+                        return v;
+                    }));
+                    System.out.printf("%3d threads: %,15d ops/s (compute: %,15d ops/s)%n", threads, current, baseline);
+                }
+            }
+            case "memory" -> {
+                System.out.printf("Heap footprint of %,d keys with %d byte values, %s eviction%n", FOOTPRINT_KEYS, FOOTPRINT_VALUE_SIZE, strategy);
+                long bucketBytes = footprint(() -> {
+                    Bucket bucket = new Bucket("benchmark", Long.MAX_VALUE, strategy);
+                    for (int i = 0; i < FOOTPRINT_KEYS; i++) {
+                        bucket.put(createEntry(i));
+                    }
+                    return bucket;
+                });
+                // The layout buckets had before their compact tables: map nodes holding entry objects
+                long mapBytes = footprint(() -> {
+                    ConcurrentHashMap<String, CacheEntry> map = new ConcurrentHashMap<>(1000, 0.8f);
+                    EvictionPolicy policy = EvictionPolicy.create(strategy, Long.MAX_VALUE);
+                    for (int i = 0; i < FOOTPRINT_KEYS; i++) {
+                        CacheEntry entry = createEntry(i);
+                        map.put(entry.getKey(), entry);
+                        policy.onWrite(entry.getKey(), 96 + 2L * entry.getKey().length() + entry.getValue().size());
+                    }
+                    policy.selectVictim(); // Drains the buffered writes
+                    return List.of(map, policy);
+                });
+                System.out.printf("Bucket:            %,6d bytes/key %,15d keys/GB%n", bucketBytes / FOOTPRINT_KEYS, (1L << 30) * FOOTPRINT_KEYS / bucketBytes);
+                System.out.printf("ConcurrentHashMap: %,6d bytes/key %,15d keys/GB%n", mapBytes / FOOTPRINT_KEYS, (1L << 30) * FOOTPRINT_KEYS / mapBytes);
+            }
+            case "transport" -> {
+                for (Transport transport : new Transport[] {Transport.NIO, Transport.EPOLL}) {
+                    if (MemoraServer.resolve(transport) != transport) {
+                        System.out.printf("%s transport unavailable on this platform, skipped%n", transport);
+                        continue;
+                    }
+                    benchmarkTransport(transport, seconds);
+                }
+            }
+            case "pipeline" -> benchmarkPipelining(seconds, entries, strategy);
+            default -> System.err.println("Unknown scenario " + scenario + ", expected one of: put, get, memory, transport, pipeline");
+        }
+    }
+
+    private static void benchmarkTransport(Transport transport, int seconds) throws InterruptedException {
+        int port = freePort();
+        ServerOptions options = ServerOptions.builder()
+                .transport(transport)
+                .acceptors(Runtime.getRuntime().availableProcessors())
+                .backlog(4096)
+                .tcpNoDelay(true)
+                .build();
+        ThreadPoolService threadPoolService = new ThreadPoolService();
+        MemoraServer server = startServer(new MemoraServer(LOOPBACK, port, new OkChannel(), threadPoolService, options));
+
+        byte[] request = frame(RpcRequest.newBuilder()
+                .setCorrelationId("benchmark")
+                .setGetCommand(KeyCommandBatch.newBuilder().addCommands(KeyCommand.newBuilder().setKey("key-0")))
+                .build());
+        System.out.printf("%s transport, connection storm%n", transport);
+        for (int threads : THREAD_COUNTS) {
+            report(threads, measure(threads, seconds, i -> {
+                try (Socket socket = new Socket(LOOPBACK, port)) {
+                    socket.setSoLinger(true, 0); // Keeps closed sockets out of TIME_WAIT
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        System.out.printf("%s transport, small requests on one connection per thread%n", transport);
+        for (int threads : THREAD_COUNTS) {
+            Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+            report(threads, measurePerThread(threads, seconds, () -> {
+                Socket socket = connect(port, sockets);
+                return i -> roundTrip(socket, request);
+            }));
+            for (Socket socket : sockets) {
+                close(socket);
+            }
+        }
+        stopServer(server, threadPoolService);
+    }
+
+    /**
+     * Runs GETs against a bucket behind a server that executes them on lanes,
+     * as a node does, pipelining up to a given depth on each connection, with
+     * a flush per response and with flushes consolidated.
+     */
+    private static void benchmarkPipelining(int seconds, CacheEntry[] entries, EvictionStrategy strategy) throws InterruptedException {
+        Bucket bucket = new Bucket("benchmark", Long.MAX_VALUE, strategy);
+        for (CacheEntry entry : entries) {
+            bucket.put(entry);
+        }
+        for (boolean consolidated : new boolean[] {false, true}) {
+            int port = freePort();
+            ServerOptions options = ServerOptions.builder()
+                    .transport(Transport.AUTO)
+                    .acceptors(1)
+                    .backlog(128)
+                    .tcpNoDelay(true)
+                    .build();
+            ThreadPoolService threadPoolService = new ThreadPoolService();
+            ExecutorService[] lanes = threadPoolService.getLanes(ThreadPool.EXECUTION_THREAD_POOL);
+            MemoraServer server = startServer(new MemoraServer(LOOPBACK, port, new GetChannel(bucket, lanes, consolidated), threadPoolService, options));
+
+            System.out.printf("Pipelined GETs on %d connections, %s%n", PIPELINE_CONNECTIONS, consolidated ? "flushes consolidated" : "one flush per response");
+            for (int depth : PIPELINE_DEPTHS) {
+                ByteArrayOutputStream batch = new ByteArrayOutputStream();
+                for (int i = 0; i < depth; i++) {
+                    batch.writeBytes(frame(RpcRequest.newBuilder()
+                            .setCorrelationId(String.valueOf(i))
+                            .setGetCommand(KeyCommandBatch.newBuilder().addCommands(KeyCommand.newBuilder().setKey(entries[i * 31 & KEY_MASK].getKey())))
+                            .build()));
+                }
+                byte[] requests = batch.toByteArray();
+                Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+                long rounds = measurePerThread(PIPELINE_CONNECTIONS, seconds, () -> {
+                    Socket socket = connect(port, sockets);
+                    InputStream in = buffered(socket);
+                    return i -> pipeline(socket, in, requests, depth);
+                });
+                for (Socket socket : sockets) {
+                    close(socket);
+                }
+                System.out.printf("depth %3d: %,15d requests/s%n", depth, rounds * depth);
+            }
+            stopServer(server, threadPoolService);
+        }
+    }
+
+    /**
+     * Starts the server in the background and returns it once bound.
+     */
+    private static MemoraServer startServer(MemoraServer server) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start(started::countDown);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "memora-benchmark-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        started.await();
+        return server;
+    }
+
+    private static void stopServer(MemoraServer server, ThreadPoolService threadPoolService) {
+        try {
+            server.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        threadPoolService.shutdown();
+    }
+
+    /**
+     * Serves GETs from the bucket on lanes picked by key, as the execution
+     * stage does, writing each response back from its lane.
+     */
+    private static final class GetChannel extends ChannelInitializer<Channel> {
+
+        private final Bucket bucket;
+        private final ExecutorService[] lanes;
+        private final boolean consolidated;
+
+        private GetChannel(Bucket bucket, ExecutorService[] lanes, boolean consolidated) {
+            this.bucket = bucket;
+            this.lanes = lanes;
+            this.consolidated = consolidated;
+        }
+
+        @Override
+        protected void initChannel(Channel channel) {
+            if (consolidated) {
+                channel.pipeline().addLast(MemoraServerChannel.newFlushConsolidation());
+            }
+            channel.pipeline()
+                    .addLast(new ProtobufVarint32LengthFieldPrepender())
+                    .addLast(new ProtobufEncoder())
+                    .addLast(new ProtobufVarint32FrameDecoder())
+                    .addLast(new ProtobufDecoder(RpcRequest.getDefaultInstance()))
+                    .addLast(new SimpleChannelInboundHandler<RpcRequest>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, RpcRequest request) {
+                            String key = request.getGetCommand().getCommands(0).getKey();
+                            lanes[Math.floorMod(key.hashCode(), lanes.length)].execute(() -> {
+                                CacheEntry entry = bucket.get(key);
+                                ctx.writeAndFlush(RpcResponse.newBuilder()
+                                        .setStatus(entry != null ? RpcStatus.OK : RpcStatus.NOT_FOUND)
+                                        .setCorrelationId(request.getCorrelationId())
+                                        .setValue(entry != null ? entry.getValue() : ByteString.EMPTY)
+                                        .build());
+                            });
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Answers every request with an empty OK, so the transport is all that is measured.
+     */
+    private static final class OkChannel extends ChannelInitializer<Channel> {
+
+        @Override
+        protected void initChannel(Channel channel) {
+            channel.pipeline()
+                    .addLast(new ProtobufVarint32FrameDecoder())
+                    .addLast(new ProtobufDecoder(RpcRequest.getDefaultInstance()))
+                    .addLast(new ProtobufVarint32LengthFieldPrepender())
+                    .addLast(new ProtobufEncoder())
+                    .addLast(new SimpleChannelInboundHandler<RpcRequest>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, RpcRequest request) {
+                            ctx.writeAndFlush(RpcResponse.newBuilder()
+                                    .setStatus(RpcStatus.OK)
+                                    .setCorrelationId(request.getCorrelationId())
+                                    .build());
+                        }
+                    });
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Length-prefixed the way the server's frame decoder expects
+    private static byte[] frame(RpcRequest request) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            request.writeDelimitedTo(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Socket connect(int port, Queue<Socket> sockets) {
+        try {
+            Socket socket = new Socket(LOOPBACK, port);
+            socket.setTcpNoDelay(true);
+            sockets.add(socket);
+            return socket;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static InputStream buffered(Socket socket) {
+        try {
+            return new BufferedInputStream(socket.getInputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sends the requests in one write and reads back as many responses, in
+     * whatever order they come.
+     */
+    private static void pipeline(Socket socket, InputStream in, byte[] requests, int depth) {
+        try {
+            socket.getOutputStream().write(requests);
+            for (int i = 0; i < depth; i++) {
+                if (RpcResponse.parseDelimitedFrom(in) == null) {
+                    throw new IOException("Connection closed by the server");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void roundTrip(Socket socket, byte[] request) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write(request);
+            out.flush();
+            if (RpcResponse.parseDelimitedFrom(in) == null) {
+                throw new IOException("Connection closed by the server");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CacheEntry[] createEntries() {
+        CacheEntry[] entries = new CacheEntry[KEY_SPACE];
+        for (int i = 0; i < KEY_SPACE; i++) {
+            entries[i] = CacheEntry.builder().key("key-" + i).value(ByteString.copyFromUtf8("value-" + i)).ttl(-1).build();
+        }
+        return entries;
+    }
+
+    private static CacheEntry createEntry(int i) {
+        byte[] value = new byte[FOOTPRINT_VALUE_SIZE];
+        ThreadLocalRandom.current().nextBytes(value);
+        return CacheEntry.builder().key("key-" + i).value(ByteString.copyFrom(value)).ttl(-1).build();
+    }
+
+    /**
+     * Returns how much the heap grew, after full collections, by building and
+     * holding on to the structure.
+     */
+    private static long footprint(Supplier<Object> builder) {
+        long before = usedHeap();
+        Object structure = builder.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(structure);
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs the operation from the given number of threads for the given time,
+     * passing each call a random key index, and returns operations per second.
+     */
+    private static long measure(int threads, int seconds, IntConsumer operation) throws InterruptedException {
+        return measurePerThread(threads, seconds, () -> operation);
+    }
+
+    /**
+     * Same as above, each thread running the operation the factory creates
+     * for it, for state of its own such as a connection.
+     */
+    private static long measurePerThread(int threads, int seconds, Supplier<IntConsumer> factory) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                IntConsumer operation = factory.get();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while ((count & 0xff) != 0 || System.nanoTime() < deadline) {
+                    operation.accept(random.nextInt());
+                    count++;
+                }
+                operations.add(count);
+            }, "memora-benchmark-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() / seconds;
+    }
+
+    private static void report(int threads, long opsPerSecond) {
+        System.out.printf("%3d threads: %,15d ops/s%n", threads, opsPerSecond);
+    }
+}
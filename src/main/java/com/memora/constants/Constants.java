@@ -11,10 +11,58 @@ public class Constants {
     public static final String MY_REPLICAS = "NODE_REPLICAS";
     public static final String NUMBER_OF_BUCKETS = "NUMBER_OF_BUCKETS";
     public static final String REPLICATION_FACTOR = "REPLICATION_FACTOR";
+    public static final String ALLOWED_MEMORY = "ALLOWED_MEMORY";
+    public static final String EVICTION_POLICY = "EVICTION_POLICY";
+    public static final String STORAGE_MODE = "STORAGE_MODE";
+    public static final String OFF_HEAP_CAPACITY = "OFF_HEAP_CAPACITY";
+    public static final String WAL_DIRECTORY = "WAL_DIRECTORY";
+    public static final String WAL_DURABILITY = "WAL_DURABILITY";
+    public static final String WAL_SYNC_INTERVAL = "WAL_SYNC_INTERVAL";
+    public static final String WAL_SEGMENT_SIZE = "WAL_SEGMENT_SIZE";
+    public static final String WAL_MAX_SIZE = "WAL_MAX_SIZE";
+    public static final String WAL_TAIL_SIZE = "WAL_TAIL_SIZE";
+    public static final String WAL_COMPACTION_INTERVAL = "WAL_COMPACTION_INTERVAL";
+    public static final String REPLICATION_TRANSFER = "REPLICATION_TRANSFER";
+    public static final String SNAPSHOT_DIRECTORY = "SNAPSHOT_DIRECTORY";
+    public static final String SNAPSHOT_INTERVAL = "SNAPSHOT_INTERVAL";
+    public static final String SERVER_TRANSPORT = "SERVER_TRANSPORT";
+    public static final String SERVER_ACCEPTORS = "SERVER_ACCEPTORS";
+    public static final String SERVER_BACKLOG = "SERVER_BACKLOG";
+    public static final String SERVER_TCP_NODELAY = "SERVER_TCP_NODELAY";
+    public static final String SERVER_RECEIVE_BUFFER = "SERVER_RECEIVE_BUFFER";
+    public static final String SERVER_SEND_BUFFER = "SERVER_SEND_BUFFER";
+    public static final String SERVER_MAX_IN_FLIGHT = "SERVER_MAX_IN_FLIGHT";
+    public static final String SERVER_MAX_QUEUED = "SERVER_MAX_QUEUED";
+    public static final String SERVER_MAX_QPS = "SERVER_MAX_QPS";
+    public static final String SERVER_RESP_PORT = "SERVER_RESP_PORT";
     
     
     public static final String DEFAULT_PORT = "9090";
     public static final String DEFAULT_REPLICATION_FACTOR = "2";
+    public static final String DEFAULT_EVICTION_POLICY = "TINY_LFU";
+    public static final double DEFAULT_ALLOWED_MEMORY_RATIO = 0.6;
+    public static final String DEFAULT_STORAGE_MODE = "HEAP";
+    public static final double DEFAULT_OFF_HEAP_CAPACITY_RATIO = 0.6;
+    public static final String DEFAULT_WAL_DIRECTORY = "data/wal";
+    public static final String DEFAULT_WAL_DURABILITY = "PERIODIC";
+    public static final String DEFAULT_WAL_SYNC_INTERVAL = "1000"; // In milliseconds
+    public static final String DEFAULT_WAL_SEGMENT_SIZE = "64"; // In MB
+    public static final String DEFAULT_WAL_MAX_SIZE = "1024"; // In MB
+    public static final String DEFAULT_WAL_TAIL_SIZE = "64"; // In MB, 0 keeps no records in memory
+    public static final String DEFAULT_WAL_COMPACTION_INTERVAL = "60"; // In seconds
+    public static final String DEFAULT_REPLICATION_TRANSFER = "ZERO_COPY";
+    public static final String DEFAULT_SNAPSHOT_DIRECTORY = "data/snapshot";
+    public static final String DEFAULT_SNAPSHOT_INTERVAL = "300"; // In seconds
+    public static final String DEFAULT_SERVER_TRANSPORT = "AUTO";
+    public static final String DEFAULT_SERVER_ACCEPTORS = "0"; // 0 binds one socket per core
+    public static final String DEFAULT_SERVER_BACKLOG = "1024";
+    public static final String DEFAULT_SERVER_TCP_NODELAY = "true";
+    public static final String DEFAULT_SERVER_RECEIVE_BUFFER = "0"; // In KB, 0 leaves the OS default
+    public static final String DEFAULT_SERVER_SEND_BUFFER = "0"; // In KB, 0 leaves the OS default
+    public static final String DEFAULT_SERVER_MAX_IN_FLIGHT = "1024"; // Requests per connection before it stops being read
+    public static final String DEFAULT_SERVER_MAX_QUEUED = "4096"; // Requests waiting per lane before new ones are shed
+    public static final String DEFAULT_SERVER_MAX_QPS = "0"; // 0 sheds nothing on throughput alone
+    public static final String DEFAULT_SERVER_RESP_PORT = "0"; // 0 leaves the RESP listener off
 
     public static final String ADDRESS_DELIMITER = "@";
 
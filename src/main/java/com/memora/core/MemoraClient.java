@@ -1,7 +1,9 @@
 package com.memora.core;
 
+import com.google.protobuf.ByteString;
 import com.memora.enums.NodeType;
 import com.memora.exceptions.MemoraException;
+import com.memora.messages.ReplicationRecord;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
 import com.memora.messages.RpcStatus;
@@ -84,11 +86,17 @@ public class MemoraClient implements Closeable {
 
 
     public CompletableFuture<RpcResponse> call(String command) throws MemoraException {
+        return call(RequestFactory.createRequest(command));
+    }
+
+    public CompletableFuture<RpcResponse> call(RpcRequest.Builder request) throws MemoraException {
 
         NodeInfo info = MemoraNode.getInfo();
         long clusterEpoch = ClusterInfo.getEpoch();
 
-        RpcRequest.Builder request = RequestFactory.createRequest(command).setClusterEpoch(clusterEpoch);
+        request.setClusterEpoch(clusterEpoch);
+        // Only nodes have their info set, the CLI goes through here too
+        request.setFromPeer(Objects.nonNull(info));
         if (Objects.nonNull(info) && info.getType().equals(NodeType.PRIMARY) ) {
             request.setNodeVersion(Version.get());
         }
@@ -104,6 +112,14 @@ public class MemoraClient implements Closeable {
         }
     }
 
+    public CompletableFuture<RpcResponse> callWithoutError(RpcRequest.Builder request) {
+        try {
+            return call(request);
+        } catch (MemoraException e) {
+            return  CompletableFuture.supplyAsync(() -> ResponseFactory.create(RpcStatus.ERROR));
+        }
+    }
+
     public CompletableFuture<RpcResponse> getNodeId() {
         return call("INFO NODE ID");
     }
@@ -120,13 +136,25 @@ public class MemoraClient implements Closeable {
         return call(String.format("NODE REPLICATE %s@%d", host, port));
     }
 
-    public boolean put(String key, String value, long ttl) {
-        String request = String.format("PUT %s %s EXAT %d", key, value, ttl);
-        return isSuccess(request);
+    public CompletableFuture<RpcResponse> catchUp(long fromVersion, long toVersion) {
+        return call(String.format("NODE CATCHUP %d %d", fromVersion, toVersion));
+    }
+
+    public CompletableFuture<RpcResponse> walRange(long fromVersion, long toVersion, boolean zeroCopy) {
+        return call(String.format("WAL RANGE %d %d%s", fromVersion, toVersion, zeroCopy ? " ZEROCOPY" : ""));
+    }
+
+    public CompletableFuture<RpcResponse> replicate(Collection<ReplicationRecord> records) {
+        return callWithoutError(RequestFactory.createReplicationRequest(records));
+    }
+
+    public boolean put(String key, ByteString value, long ttl) {
+        CacheEntry entry = CacheEntry.builder().key(key).value(value).ttl(ttl).build();
+        return isSuccess(RequestFactory.createPutRequest(List.of(entry)));
     }
 
     public boolean put(String key, String value) {
-        return put(key, value, -1);
+        return put(key, ByteString.copyFromUtf8(value), -1);
     }
 
     public boolean put(List<CacheEntry> entries) {
@@ -134,44 +162,25 @@ public class MemoraClient implements Closeable {
             return true;
         }
 
-        List<String> failedQueries = new ArrayList<>();
-        StringBuilder builder = new StringBuilder();
-        builder.append("PUT");
-        int soFar = 0;
-        boolean itemAdded = false;
-        for (CacheEntry item : entries) {
-            builder.append(String.format(" %s %s EXAT %d", item.getKey(), item.getValue(), item.getTtl()));
-            itemAdded = true;
-            if (++soFar >= PUT_BATCH_SIZE) {
-                String request = builder.toString();
-                if (!isSuccess(request)) {
-                    failedQueries.add(request);
-                }
-                builder.setLength(0);
-                builder.append("PUT");
-                soFar = 0;
-                itemAdded = false;
-            }
-        }
-        if (itemAdded) {
-            String request = builder.toString();
-            if (!isSuccess(request)) {
-                failedQueries.add(request);
+        List<List<CacheEntry>> failedBatches = new ArrayList<>();
+        for (List<CacheEntry> batch : toBatches(entries)) {
+            if (!isSuccess(RequestFactory.createPutRequest(batch))) {
+                failedBatches.add(batch);
             }
         }
 
         int retries = MAX_RETRIES;
-        while (!failedQueries.isEmpty() && retries >= 0) {
-            for (int i = failedQueries.size() - 1; i >= 0; i--) {
-                String request = failedQueries.get(i);
-                if (isSuccess(request)) {
-                    failedQueries.remove(i);
+        while (!failedBatches.isEmpty() && retries >= 0) {
+            for (int i = failedBatches.size() - 1; i >= 0; i--) {
+                // A fresh request per attempt, so each gets its own correlation ID
+                if (isSuccess(RequestFactory.createPutRequest(failedBatches.get(i)))) {
+                    failedBatches.remove(i);
                 }
             }
             retries--;
         }
 
-        return failedQueries.isEmpty();
+        return failedBatches.isEmpty();
     }
 
     // This is the original, blocking method.
@@ -194,31 +203,8 @@ public class MemoraClient implements Closeable {
             return CompletableFuture.completedFuture(true);
         }
 
-        List<String> batchCommands = new ArrayList<>();
-        StringBuilder builder = new StringBuilder("PUT");
-        int soFar = 0;
-
-        for (CacheEntry item: entries) {
-            builder.append(String.format(" %s %s EXAT %d", item.getKey(), item.getValue(), item.getTtl()));
-            
-            if (++soFar >= PUT_BATCH_SIZE) {
-                batchCommands.add(builder.toString());
-                builder.setLength(0);
-                builder.append("PUT");
-                soFar = 0;
-            }
-        }
-        // Add the last, partially filled batch if it exists
-        if (soFar > 0) {
-            batchCommands.add(builder.toString());
-        }
-        
-        if (batchCommands.isEmpty()) {
-            return CompletableFuture.completedFuture(true);
-        }
-
-        List<CompletableFuture<Boolean>> futures = batchCommands.stream()
-            .map(command -> attemptWithRetries(command, MAX_RETRIES, pool))
+        List<CompletableFuture<Boolean>> futures = toBatches(entries).stream()
+            .map(batch -> attemptWithRetries(batch, MAX_RETRIES, pool))
             .collect(Collectors.toList());
 
         return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
@@ -229,14 +215,15 @@ public class MemoraClient implements Closeable {
     /**
      * A helper method that attempts to send a request and retries on failure.
      *
-     * @param request      The command string to send.
+     * @param batch        The entries to put.
      * @param retriesLeft  The number of retries remaining.
      * @param pool         The thread pool to execute on.
      * @return A CompletableFuture that completes with the success status.
      */
-    private CompletableFuture<Boolean> attemptWithRetries(String request, int retriesLeft, ExecutorService pool) {
+    private CompletableFuture<Boolean> attemptWithRetries(List<CacheEntry> batch, int retriesLeft, ExecutorService pool) {
         // Run the network call asynchronously on the thread pool
-        CompletableFuture<Boolean> attempt = CompletableFuture.supplyAsync(() -> isSuccess(request), pool);
+        CompletableFuture<Boolean> attempt = CompletableFuture.supplyAsync(
+            () -> isSuccess(RequestFactory.createPutRequest(batch)), pool);
 
         return attempt.thenComposeAsync(success -> {
             if (success) {
@@ -246,13 +233,32 @@ public class MemoraClient implements Closeable {
             if (retriesLeft > 0) {
                 // If failed and we have retries left, try again.
                 log.info("Request failed, retrying... (" + retriesLeft + " retries left)");
-                return attemptWithRetries(request, retriesLeft - 1, pool);
+                return attemptWithRetries(batch, retriesLeft - 1, pool);
             }
             // If failed and no retries are left, return final failure.
             return CompletableFuture.completedFuture(false);
         }, pool);
     }
 
+    /**
+     * Splits entries into batches of at most PUT_BATCH_SIZE.
+     */
+    private List<List<CacheEntry>> toBatches(Collection<CacheEntry> entries) {
+        List<List<CacheEntry>> batches = new ArrayList<>();
+        List<CacheEntry> batch = new ArrayList<>(PUT_BATCH_SIZE);
+        for (CacheEntry entry : entries) {
+            batch.add(entry);
+            if (batch.size() >= PUT_BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>(PUT_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
     public CompletableFuture<RpcResponse> get(String key) {
         return call(String.format("GET %s", key));
     }
@@ -273,6 +279,17 @@ public class MemoraClient implements Closeable {
         return RpcStatus.OK.equals(response.getStatus());
     }
 
+    private boolean isSuccess(RpcRequest.Builder request) {
+        RpcResponse response;
+        try {
+            response = callWithoutError(request).get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("RPC call failed for request {}: {}", request.getCorrelationId(), e.getMessage());
+            return false;
+        }
+        return RpcStatus.OK.equals(response.getStatus());
+    }
+
     @Override
     public void close() throws IOException {
         lock.lock();
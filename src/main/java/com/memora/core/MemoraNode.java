@@ -1,24 +1,37 @@
 package com.memora.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.memora.enums.ThreadPool;
+import com.memora.enums.WalDurability;
+import com.memora.messages.ReplicationBatch;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
 import com.memora.model.BucketInfo;
+import com.memora.model.BucketStats;
 import com.memora.model.CacheEntry;
 import com.memora.model.ClusterMap;
 import com.memora.model.NodeInfo;
 import com.memora.model.NodeBase;
+import com.memora.model.RecoveryStats;
+import com.memora.model.SnapshotStats;
+import com.memora.model.WalStats;
 import com.memora.services.BucketManager;
 import com.memora.services.ClusterOrchestrator;
+import com.memora.services.RecoveryService;
 import com.memora.services.ReplicationManager;
+import com.memora.services.SnapshotService;
 import com.memora.services.ThreadPoolService;
+import com.memora.store.Bucket;
+import com.memora.store.WAL;
 import com.memora.utils.QPS;
 
 import lombok.extern.slf4j.Slf4j;
@@ -26,11 +39,18 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class MemoraNode {
 
+    private static final long WAL_TRUNCATION_PERIOD_SECONDS = 1;
+
     private static NodeInfo info = null;
 
     private final BucketManager bucketManager;
     private final ThreadPoolService threadPoolService;
     private final List<NodeBase> myReplicas;
+    private final WAL wal;
+    private final RecoveryService recoveryService;
+    private final SnapshotService snapshotService;
+    private final long snapshotInterval;
+    private final long compactionInterval;
     private final Provider<ClusterOrchestrator> clusterOrchestratorProvider;
     private final Provider<ReplicationManager> replicationManagerProvider;
 
@@ -43,6 +63,11 @@ public class MemoraNode {
             final List<NodeBase> myReplicas,
             final ThreadPoolService threadPoolService,
             final BucketManager bucketManager,
+            final WAL wal,
+            final RecoveryService recoveryService,
+            final SnapshotService snapshotService,
+            final long snapshotInterval,
+            final long compactionInterval,
             final Provider<ClusterOrchestrator> clusterOrchestratorProvider,
             final Provider<ReplicationManager> replicationManagerProvider
     ) {
@@ -52,10 +77,22 @@ public class MemoraNode {
         this.clusterOrchestratorProvider = clusterOrchestratorProvider;
         this.replicationManagerProvider = replicationManagerProvider;
         this.myReplicas = myReplicas;
+        this.wal = wal;
+        this.recoveryService = recoveryService;
+        this.snapshotService = snapshotService;
+        this.snapshotInterval = snapshotInterval;
+        this.compactionInterval = compactionInterval;
 
         log.info("Node initialized with ID: {}, Host: {}, Port: {}", info.getNodeId(), info.getHost(), info.getPort());
     }
 
+    /**
+     * Restores the data logged before the last shutdown, to be done before taking requests.
+     */
+    public void recover() {
+        recoveryService.recover();
+    }
+
     public void start() {
         threadPoolService.submitAfter(ThreadPool.GENERAL_THREAD_POOL, () -> {
             QPS qps = new QPS(threadPoolService);
@@ -68,6 +105,20 @@ public class MemoraNode {
                 });
             }
         }, 2);
+        threadPoolService.submitEvery(ThreadPool.EXPIRY_THREAD_POOL, bucketManager::expire,
+            Bucket.EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        if (wal.getDurability() == WalDurability.PERIODIC) {
+            threadPoolService.submitEvery(ThreadPool.WAL_THREAD_POOL, wal::sync,
+                wal.getSyncIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        threadPoolService.submitEvery(ThreadPool.WAL_THREAD_POOL, getReplicationManager()::truncateWal, WAL_TRUNCATION_PERIOD_SECONDS);
+        if (snapshotInterval > 0) {
+            threadPoolService.submitEvery(ThreadPool.SNAPSHOT_THREAD_POOL, snapshotService::take, snapshotInterval);
+        }
+        if (compactionInterval > 0) {
+            // Apart from the WAL thread, a long compaction must not hold back periodic syncs
+            threadPoolService.submitEvery(ThreadPool.COMPACTION_THREAD_POOL, getReplicationManager()::compactWal, compactionInterval);
+        }
 
         log.info("Node started successfully.");
     }
@@ -86,6 +137,22 @@ public class MemoraNode {
         return bucketManager.getAllBuckets();
     }
 
+    public List<BucketStats> getBucketStats() {
+        return bucketManager.getStats();
+    }
+
+    public SnapshotStats getSnapshotStats() {
+        return snapshotService.getStats();
+    }
+
+    public RecoveryStats getRecoveryStats() {
+        return recoveryService.getStats();
+    }
+
+    public WalStats getWalStats() {
+        return getReplicationManager().getWalStats();
+    }
+
     public RpcResponse.Builder forwardToPrimary(RpcRequest request) {
         return getClusterOrchestrator().forwardToPrimary(request);
     }
@@ -94,31 +161,55 @@ public class MemoraNode {
         return getClusterOrchestrator().forwardPut(entriesByNode);
     } 
 
-    public void put(CacheEntry entry) {
+    public Map<String, CompletableFuture<RpcResponse>> forwardGet(Map<String, List<String>> keysByNode) {
+        return getClusterOrchestrator().forwardGet(keysByNode);
+    }
+
+    public Map<String, CompletableFuture<RpcResponse>> forwardDelete(Map<String, List<String>> keysByNode) {
+        return getClusterOrchestrator().forwardDelete(keysByNode);
+    }
+
+    public void put(CacheEntry entry, long version) {
         increaseQPS();
-        bucketManager.put(entry);
+        try {
+            bucketManager.put(entry);
+        } catch (RuntimeException e) {
+            skipReplication(version);
+            throw e;
+        }
         handleMutation();
         if (info.isPrimary()) {
-            getReplicationManager().put(entry);
+            getReplicationManager().put(entry, version);
         }
     }
 
-    public void putAll(final Collection<CacheEntry> entries) {
+    public void putAll(final Collection<CacheEntry> entries, long version) {
         increaseQPS();
-        bucketManager.putAll(entries);
+        List<CacheEntry> applied = new ArrayList<>(entries.size());
+        try {
+            bucketManager.putAll(entries, applied::add);
+        } catch (RuntimeException e) {
+            if (applied.isEmpty()) {
+                skipReplication(version);
+            } else if (info.isPrimary()) {
+                // The entries written before the failure stay here, so replicas get them under the version
+                getReplicationManager().putAll(applied, version);
+            }
+            throw e;
+        }
         handleMutation();
         if (info.isPrimary()) {
-            getReplicationManager().putAll(entries);
+            getReplicationManager().putAll(entries, version);
         }
 
     }
 
-    public void delete(String key) {
+    public void deleteAll(final Collection<String> keys, long version) {
         increaseQPS();
-        bucketManager.delete(key);
+        keys.forEach(bucketManager::delete);
         handleMutation();
         if (info.isPrimary()) {
-            getReplicationManager().delete(key);
+            getReplicationManager().deleteAll(keys, version);
         }
     }
 
@@ -135,6 +226,15 @@ public class MemoraNode {
         getClusterOrchestrator().primarize(host, port);
     }
 
+    public boolean catchUp(long fromVersion, long toVersion) {
+        return getReplicationManager().catchUp(fromVersion, toVersion);
+    }
+
+    public void applyReplication(ReplicationBatch batch) {
+        increaseQPS();
+        getReplicationManager().apply(batch);
+    }
+
     public ClusterMap getClusterMap() {
         if (Objects.isNull(clusterOrchestrator)) {
             return null;
@@ -160,7 +260,17 @@ public class MemoraNode {
         return replicationManager;
     }
 
+    // A logged version failed locally, replicas will never be sent it
+    private void skipReplication(long version) {
+        if (info.isPrimary()) {
+            getReplicationManager().skip(version);
+        }
+    }
+
+    // Counted in place: a task per request would queue up behind a busy pool, and admission reads the count
     private void increaseQPS() {
-        threadPoolService.submit(ThreadPool.GENERAL_THREAD_POOL, QPS.getInstance()::increase);
+        if (QPS.isInitialized()) {
+            QPS.getInstance().increase();
+        }
     }
 }
@@ -1,66 +1,165 @@
 package com.memora.core;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import com.google.inject.Inject;
 import com.memora.enums.ThreadPool;
+import com.memora.enums.Transport;
+import com.memora.model.ServerOptions;
 import com.memora.services.ThreadPoolService;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import lombok.RequiredArgsConstructor;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Accepts client and cluster connections. On Linux it runs on the native
+ * epoll transport and binds several sockets to the port with SO_REUSEPORT,
+ * each accepting on its own thread, so the kernel spreads new connections
+ * across them instead of queueing them all behind one acceptor. Elsewhere,
+ * or when epoll cannot be loaded, it falls back to NIO with a single socket.
+ *
+ * When given a RESP port, it also listens there for Redis clients, with the
+ * same socket settings and event loops.
+ */
 @Slf4j
-@RequiredArgsConstructor(onConstructor = @__({@Inject}))
 public class MemoraServer implements AutoCloseable {
 
     private final String host;
     private final int port;
     private final ChannelInitializer<Channel> memoraChannel;
+    private final ChannelInitializer<Channel> respChannel; // Null without a RESP listener
     private final ThreadPoolService threadPoolService;
+    private final ServerOptions options;
 
-    private Channel serverChannel;
+    private final List<Channel> serverChannels = new CopyOnWriteArrayList<>();
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
 
+    @Inject
+    public MemoraServer(String host, int port, ChannelInitializer<Channel> memoraChannel, ChannelInitializer<Channel> respChannel,
+            ThreadPoolService threadPoolService, ServerOptions options) {
+        this.host = host;
+        this.port = port;
+        this.memoraChannel = memoraChannel;
+        this.respChannel = respChannel;
+        this.threadPoolService = threadPoolService;
+        this.options = options;
+    }
+
+    public MemoraServer(String host, int port, ChannelInitializer<Channel> memoraChannel, ThreadPoolService threadPoolService, ServerOptions options) {
+        this(host, port, memoraChannel, null, threadPoolService, options);
+    }
+
     public void start(Runnable callback) throws InterruptedException {
         ThreadPool serverPool = ThreadPool.SERVER_THREAD_POOL;
-        bossGroup = new NioEventLoopGroup(); // accepts incoming connections
-        workerGroup = new NioEventLoopGroup(serverPool.getSize(),
+        Transport transport = resolve(options.getTransport());
+        // Without SO_REUSEPORT a second socket could not bind the port
+        int acceptors = transport == Transport.EPOLL ? Math.max(1, options.getAcceptors()) : 1;
+        bossGroup = newEventLoopGroup(transport, acceptors, null); // accepts incoming connections
+        workerGroup = newEventLoopGroup(transport, serverPool.getSize(),
             threadPoolService.getThreadPool(serverPool)); // handles traffic
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(serverChannelType(transport))
                     .childHandler(memoraChannel)
-                    .option(ChannelOption.SO_BACKLOG, 128)
-                    .childOption(ChannelOption.SO_KEEPALIVE, true);
+                    .option(ChannelOption.SO_BACKLOG, options.getBacklog())
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .childOption(ChannelOption.TCP_NODELAY, options.isTcpNoDelay());
+            if (options.getReceiveBufferBytes() > 0) {
+                bootstrap.childOption(ChannelOption.SO_RCVBUF, options.getReceiveBufferBytes());
+            }
+            if (options.getSendBufferBytes() > 0) {
+                bootstrap.childOption(ChannelOption.SO_SNDBUF, options.getSendBufferBytes());
+            }
+            // Only needed to bind several sockets; left off otherwise, so another process cannot share the port
+            if (acceptors > 1) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
 
-            ChannelFuture future = bootstrap.bind(host, port).sync();
-            serverChannel = future.channel();
-            log.info("Memora Server started on port {}", port);
+            // Each bind registers on the next boss loop, so every socket gets a thread of its own
+            for (int i = 0; i < acceptors; i++) {
+                serverChannels.add(bootstrap.bind(host, port).sync().channel());
+            }
+            if (respChannel != null && options.getRespPort() > 0) {
+                ServerBootstrap respBootstrap = bootstrap.clone().childHandler(respChannel);
+                for (int i = 0; i < acceptors; i++) {
+                    serverChannels.add(respBootstrap.bind(host, options.getRespPort()).sync().channel());
+                }
+                log.info("Listening for RESP clients on port {}", options.getRespPort());
+            }
+            // Only bound once the node has recovered, so no request sees a partially loaded node
+            log.info("Memora Server started on port {} over {} with {} acceptors, ready {} ms after launch",
+                port, transport, acceptors, ManagementFactory.getRuntimeMXBean().getUptime());
 
             callback.run();
 
-            future.channel().closeFuture().sync();
+            for (Channel channel : serverChannels) {
+                channel.closeFuture().sync();
+            }
         } finally {
             workerGroup.shutdownGracefully();
             bossGroup.shutdownGracefully();
         }
     }
 
+    /**
+     * Picks epoll when asked for, or for AUTO when the native library loads,
+     * and NIO otherwise.
+     */
+    public static Transport resolve(Transport transport) {
+        if (transport == Transport.NIO) {
+            return Transport.NIO;
+        }
+        if (Epoll.isAvailable()) {
+            return Transport.EPOLL;
+        }
+        if (transport == Transport.EPOLL) {
+            log.warn("Epoll transport unavailable, falling back to NIO", Epoll.unavailabilityCause());
+        }
+        return Transport.NIO;
+    }
+
+    /**
+     * Event loops for a resolved transport, running on the given executor or
+     * on threads of their own if it is null.
+     */
+    public static EventLoopGroup newEventLoopGroup(Transport transport, int threads, Executor executor) {
+        if (transport == Transport.EPOLL) {
+            return new EpollEventLoopGroup(threads, executor);
+        }
+        return new NioEventLoopGroup(threads, executor);
+    }
+
+    public static Class<? extends ServerSocketChannel> serverChannelType(Transport transport) {
+        return transport == Transport.EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends SocketChannel> channelType(Transport transport) {
+        return transport == Transport.EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
     @Override
     public void close() throws IOException {
-        if (serverChannel != null) {
-            serverChannel.close(); // close the server socket
-        }
+        serverChannels.forEach(Channel::close); // close the server sockets
         if (workerGroup != null) {
             workerGroup.shutdownGracefully();
         }
@@ -1,46 +1,166 @@
 package com.memora.core;
 
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.memora.executors.WalExecutor;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
-import com.memora.services.CommandExecutor;
+import com.memora.messages.RpcStatus;
+import com.memora.messages.WalCommand.RangeRequest;
+import com.memora.model.ServerOptions;
+import com.memora.services.ExecutionStage;
+import com.memora.store.WAL;
 
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.protobuf.ProtobufDecoder;
 import io.netty.handler.codec.protobuf.ProtobufEncoder;
 import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
 import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Pipeline of a server connection. Clients may pipeline requests: each is
+ * handed to the execution stage as soon as it is decoded, and responses are
+ * written back as they complete, possibly out of order, for the client to
+ * match by correlation ID. Their flushes are consolidated, so responses
+ * completing close together reach the socket in one write instead of one
+ * syscall each. Reads pause while the connection has too many requests
+ * executing or unsent responses, see {@link ReadThrottle}.
+ */
 @Slf4j
 public class MemoraServerChannel extends ChannelInitializer<Channel> {
 
-    private final CommandExecutor commandExecutor;
+    // Flushes held back at most before one goes through anyway
+    private static final int MAX_CONSOLIDATED_FLUSHES = 256;
+
+    private final ExecutionStage executionStage;
+    private final WAL wal;
+    private final int maxInFlight;
 
     public MemoraServerChannel(
-            CommandExecutor commandExecutor
+            ExecutionStage executionStage,
+            WAL wal,
+            ServerOptions options
     ) {
-        this.commandExecutor = commandExecutor;
+        this.executionStage = executionStage;
+        this.wal = wal;
+        this.maxInFlight = options.getMaxInFlight();
     }
 
     private class MemoraRequestHandler extends SimpleChannelInboundHandler<RpcRequest> {
 
+        private final ReadThrottle throttle = new ReadThrottle(maxInFlight);
+
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, RpcRequest request) throws Exception {
-            RpcResponse response = commandExecutor.execute(request);
-            log.info("Sending response: {}", response);
-            ctx.writeAndFlush(response);
+            if (request.getCommandCase() == RpcRequest.CommandCase.WAL_COMMAND
+                    && request.getWalCommand().getRange().getZeroCopy() && shipRange(ctx, request)) {
+                return;
+            }
+            throttle.started(ctx.channel());
+            // Executed off the event loop, the response is written back from the lane
+            executionStage.submit(request, response -> ctx.writeAndFlush(response)
+                    // Notified on the event loop, once the response left or the connection failed
+                    .addListener(future -> throttle.finished(ctx.channel())));
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            throttle.update(ctx.channel());
+            ctx.fireChannelWritabilityChanged();
         }
 
     }
 
+    /**
+     * Answers a zero-copy WAL range with the segment file's bytes, sent from
+     * the page cache to the socket without passing through the heap. They go
+     * behind a hand-written RpcResponse header declaring them as its value,
+     * so the replica decodes the whole as a regular response. Both are written
+     * past the protobuf encoders, which would otherwise frame them again.
+     * The segment's channel is pinned from the lookup until the bytes are
+     * sent. Returns false if the range is not on disk any more or holds
+     * nothing, for the executor to answer.
+     */
+    private boolean shipRange(ChannelHandlerContext ctx, RpcRequest request) throws IOException {
+        RangeRequest range = request.getWalCommand().getRange();
+        WAL.Span span = wal.locate(range.getFromVersion(), range.getToVersion(), WalExecutor.MAX_FRAME_BYTES);
+        if (span == null) {
+            return false;
+        }
+        int length = (int) span.getLength();
+        byte[] fields = RpcResponse.newBuilder()
+                .setStatus(RpcStatus.OK)
+                .setCorrelationId(request.getCorrelationId())
+                .build()
+                .toByteArray();
+        int valueTagSize = CodedOutputStream.computeTagSize(RpcResponse.VALUE_FIELD_NUMBER);
+        int messageSize = fields.length + valueTagSize + CodedOutputStream.computeUInt32SizeNoTag(length) + length;
+        byte[] header = new byte[CodedOutputStream.computeUInt32SizeNoTag(messageSize) + messageSize - length];
+        CodedOutputStream out = CodedOutputStream.newInstance(header);
+        out.writeUInt32NoTag(messageSize); // Frame length, as the length field prepender would write it
+        out.writeRawBytes(fields);
+        out.writeTag(RpcResponse.VALUE_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(length);
+        out.checkNoSpaceLeft();
+
+        ChannelHandlerContext head = ctx.pipeline().context(ProtobufVarint32LengthFieldPrepender.class);
+        SegmentRegion region = new SegmentRegion(span);
+        // One task, so no other response gets between the header and the bytes
+        Runnable write = () -> {
+            head.write(Unpooled.wrappedBuffer(header));
+            head.writeAndFlush(region);
+        };
+        if (ctx.executor().inEventLoop()) {
+            write.run();
+        } else {
+            ctx.executor().execute(write);
+        }
+        return true;
+    }
+
+    /**
+     * Region of a WAL segment that releases the segment once sent, rather
+     * than closing its channel, which the WAL shares with other readers.
+     */
+    private static final class SegmentRegion extends DefaultFileRegion {
+
+        private final WAL.Span span;
+
+        private SegmentRegion(WAL.Span span) {
+            super(span.getChannel(), span.getOffset(), span.getLength());
+            this.span = span;
+        }
+
+        @Override
+        protected void deallocate() {
+            span.release();
+        }
+    }
+
+    /**
+     * Batches flushes: while a read is in progress they wait for the end of
+     * it, otherwise for a task run right after those already queued on the
+     * event loop, which responses written from the lanes arrive as.
+     */
+    public static FlushConsolidationHandler newFlushConsolidation() {
+        return new FlushConsolidationHandler(MAX_CONSOLIDATED_FLUSHES, true);
+    }
+
     @Override
     protected void initChannel(Channel channel) throws Exception {
         ChannelPipeline pipeline = channel.pipeline();
 
+        // Closest to the socket, so it sees every flush, zero-copy ranges included
+        pipeline.addLast(newFlushConsolidation());
         // === OUTBOUND (Sending RpcResponse) ===
         // These must come first for outbound messages.
         // 1. Prepends the length of the message to the byte stream.
@@ -51,8 +171,8 @@ public class MemoraServerChannel extends ChannelInitializer<Channel> {
         // === INBOUND (Receiving RpcRequest) ===
         // 1. Frames the incoming stream by reading the length prefix.
         pipeline.addLast(new ProtobufVarint32FrameDecoder());
-        // 2. Decodes the framed bytes into an RpcRequest object.
-        pipeline.addLast(new ProtobufDecoder(RpcRequest.getDefaultInstance()));
+        // 2. Decodes the framed bytes into an RpcRequest object, leaving values in place.
+        pipeline.addLast(new RequestDecoder());
 
         // === YOUR BUSINESS LOGIC ===
         // This handler now correctly receives the RpcRequest object.
@@ -0,0 +1,47 @@
+package com.memora.core;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+
+/**
+ * Stops reading a connection while it has too many requests executing, or
+ * while its responses pile up faster than the socket takes them, and reads it
+ * again once half of those requests are answered and the outbound buffer has
+ * drained. A client pipelining faster than the node keeps up is then held
+ * back by TCP flow control rather than buffered without bound.
+ *
+ * One per connection, only used from its event loop. Frames already read
+ * keep coming after reads are paused, so the limit may be overshot by a
+ * read's worth.
+ */
+final class ReadThrottle {
+
+    private final int maxInFlight; // 0 for no limit but writability
+    private int inFlight;
+
+    ReadThrottle(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    void started(Channel channel) {
+        inFlight++;
+        update(channel);
+    }
+
+    void finished(Channel channel) {
+        inFlight--;
+        update(channel);
+    }
+
+    void update(Channel channel) {
+        ChannelConfig config = channel.config();
+        boolean limited = maxInFlight > 0;
+        if (config.isAutoRead()) {
+            if ((limited && inFlight >= maxInFlight) || !channel.isWritable()) {
+                config.setAutoRead(false);
+            }
+        } else if ((!limited || inFlight <= maxInFlight / 2) && channel.isWritable()) {
+            config.setAutoRead(true);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.memora.core;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import com.memora.messages.RpcRequest;
+import com.memora.messages.RpcRequest.CommandCase;
+import com.memora.messages.RpcStatus;
+import com.memora.utils.ResponseFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decodes request frames in place of ProtobufDecoder, which copies every
+ * value of a request out of the frame, after copying the frame itself out of
+ * a direct buffer.
+ *
+ * The frame is copied once into an array of its own. The correlation ID and
+ * command are peeked from it first, reading no further than the command's
+ * tag. Reads, writes and replication batches are then parsed with aliasing: their keys are
+ * decoded, but values stay slices of the array rather than copies. Anything
+ * keeping a value, a bucket or the WAL, copies it anyway. Other commands are
+ * small and parsed as usual. A frame that does not parse is answered with
+ * BAD_REQUEST under its peeked correlation ID instead of failing the
+ * connection.
+ */
+@Slf4j
+public class RequestDecoder extends MessageToMessageDecoder<ByteBuf> {
+
+    private static final Set<CommandCase> DATA_COMMANDS = EnumSet.of(CommandCase.GET_COMMAND, CommandCase.PUT_COMMAND, CommandCase.DELETE_COMMAND,
+            CommandCase.REPLICATION_BATCH);
+
+    /**
+     * What a frame says about itself before its command is read.
+     */
+    public record Header(String correlationId, CommandCase commandCase) {
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf frame, List<Object> out) {
+        // The frame's buffer goes back to the pool once decoded, values must not point into it
+        byte[] bytes = ByteBufUtil.getBytes(frame);
+        Header header = peek(bytes);
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(bytes);
+            if (DATA_COMMANDS.contains(header.commandCase())) {
+                input.enableAliasing(true);
+            }
+            out.add(RpcRequest.parseFrom(input));
+        } catch (IOException e) {
+            log.warn("Rejecting malformed {} request {}: {}", header.commandCase(), header.correlationId(), e.getMessage());
+            RpcRequest request = RpcRequest.newBuilder().setCorrelationId(header.correlationId()).build();
+            ctx.writeAndFlush(ResponseFactory.create(RpcStatus.BAD_REQUEST, request, "Malformed request"));
+        }
+    }
+
+    /**
+     * Reads the correlation ID and which command the frame holds, stopping at
+     * the command since the ID is serialized before it. Both are left empty
+     * if the frame does not get that far.
+     */
+    public static Header peek(byte[] frame) {
+        String correlationId = "";
+        CodedInputStream input = CodedInputStream.newInstance(frame);
+        try {
+            while (!input.isAtEnd()) {
+                int tag = input.readTag();
+                int field = WireFormat.getTagFieldNumber(tag);
+                if (field == RpcRequest.CORRELATION_ID_FIELD_NUMBER) {
+                    correlationId = input.readString();
+                    continue;
+                }
+                CommandCase commandCase = CommandCase.forNumber(field);
+                if (commandCase != null && commandCase != CommandCase.COMMAND_NOT_SET) {
+                    return new Header(correlationId, commandCase);
+                }
+                input.skipField(tag);
+            }
+        } catch (IOException e) {
+            log.debug("Failed to peek at frame: {}", e.getMessage());
+        }
+        return new Header(correlationId, CommandCase.COMMAND_NOT_SET);
+    }
+}
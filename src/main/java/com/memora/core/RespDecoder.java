@@ -0,0 +1,189 @@
+package com.memora.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decodes RESP2 commands into their arguments, as sent by Redis clients:
+ * arrays of bulk strings, or inline commands, a line of space separated
+ * words as typed into a terminal. Any number of commands may arrive in one
+ * read, each is decoded as soon as it is complete.
+ *
+ * Arguments are copied out of the buffer once, straight into arrays of their
+ * own, with nothing parsed as text but the lengths. A command that is not
+ * complete yet is left in the buffer; how far its arguments were checked is
+ * remembered, so each read only scans the headers that arrived with it, and
+ * nothing is copied before the whole command is there. A protocol error is
+ * answered the way Redis does, then the connection is closed.
+ */
+@Slf4j
+public class RespDecoder extends ByteToMessageDecoder {
+
+    private static final int MAX_INLINE_BYTES = 64 * 1024;
+    private static final int MAX_ARGUMENTS = 1024 * 1024;
+    private static final int MAX_BULK_BYTES = 64 * 1024 * 1024;
+    private static final byte[][] EMPTY = new byte[0][];
+
+    private boolean failed; // Bytes read after a protocol error are dropped until the connection closes
+    // Multibulk command at the reader index, not all there yet
+    private int pendingCount = -1; // Its arguments, -1 if none is pending
+    private int pendingScanned; // Arguments found whole so far
+    private int pendingBytes; // Bytes they take, its header included
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (failed) {
+            in.skipBytes(in.readableBytes());
+            return;
+        }
+        int start = in.readerIndex();
+        try {
+            byte[][] command = in.getByte(start) == '*' ? readMultiBulk(in) : readInline(in);
+            if (command == null) {
+                in.readerIndex(start); // Not all there yet
+            } else if (command.length > 0) {
+                out.add(command);
+            }
+        } catch (IllegalArgumentException e) {
+            failed = true;
+            log.warn("Closing RESP connection {}: {}", ctx.channel().remoteAddress(), e.getMessage());
+            in.skipBytes(in.readableBytes());
+            ctx.writeAndFlush(Unpooled.copiedBuffer("-ERR Protocol error: " + e.getMessage() + "\r\n", StandardCharsets.UTF_8))
+                    .addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private byte[][] readMultiBulk(ByteBuf in) {
+        int start = in.readerIndex();
+        if (pendingCount < 0) {
+            int end = lineEnd(in, start, MAX_INLINE_BYTES);
+            if (end < 0) {
+                return null;
+            }
+            long count = parseLength(in, start + 1, end);
+            if (count <= 0) {
+                in.readerIndex(end + 2);
+                return EMPTY;
+            }
+            if (count > MAX_ARGUMENTS) {
+                throw new IllegalArgumentException("invalid multibulk length");
+            }
+            pendingCount = (int) count;
+            pendingScanned = 0;
+            pendingBytes = end + 2 - start;
+        }
+        // Check the arguments that arrived since the last read, without copying them
+        while (pendingScanned < pendingCount) {
+            int header = start + pendingBytes;
+            if (header >= in.writerIndex()) {
+                return null;
+            }
+            if (in.getByte(header) != '$') {
+                throw new IllegalArgumentException("expected '$', got '" + (char) in.getByte(header) + "'");
+            }
+            int end = lineEnd(in, header, MAX_INLINE_BYTES);
+            if (end < 0) {
+                return null;
+            }
+            long length = parseLength(in, header + 1, end);
+            if (length < 0 || length > MAX_BULK_BYTES) {
+                throw new IllegalArgumentException("invalid bulk length");
+            }
+            if (in.writerIndex() - (end + 2) < length + 2) {
+                return null;
+            }
+            pendingBytes = (int) (end + 2 + length + 2 - start);
+            pendingScanned++;
+        }
+
+        // All there, copy each argument once
+        byte[][] arguments = new byte[pendingCount][];
+        pendingCount = -1;
+        in.readerIndex(lineEnd(in, start, MAX_INLINE_BYTES) + 2);
+        for (int i = 0; i < arguments.length; i++) {
+            int header = in.readerIndex();
+            int end = lineEnd(in, header, MAX_INLINE_BYTES);
+            arguments[i] = new byte[(int) parseLength(in, header + 1, end)];
+            in.readerIndex(end + 2);
+            in.readBytes(arguments[i]);
+            in.skipBytes(2); // CRLF
+        }
+        return arguments;
+    }
+
+    private static byte[][] readInline(ByteBuf in) {
+        int newline = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) '\n');
+        if (newline < 0) {
+            if (in.readableBytes() > MAX_INLINE_BYTES) {
+                throw new IllegalArgumentException("too big inline request");
+            }
+            return null;
+        }
+        int end = newline > in.readerIndex() && in.getByte(newline - 1) == '\r' ? newline - 1 : newline;
+        List<byte[]> words = new ArrayList<>();
+        int i = in.readerIndex();
+        while (i < end) {
+            while (i < end && isSpace(in.getByte(i))) {
+                i++;
+            }
+            int wordStart = i;
+            while (i < end && !isSpace(in.getByte(i))) {
+                i++;
+            }
+            if (i > wordStart) {
+                byte[] word = new byte[i - wordStart];
+                in.getBytes(wordStart, word);
+                words.add(word);
+            }
+        }
+        in.readerIndex(newline + 1);
+        return words.toArray(EMPTY);
+    }
+
+    /**
+     * Index of the CR ending the line starting at the index, or -1 if the
+     * line is not all there yet.
+     */
+    private static int lineEnd(ByteBuf in, int from, int maxBytes) {
+        int newline = in.indexOf(from, in.writerIndex(), (byte) '\n');
+        if (newline < 0) {
+            if (in.writerIndex() - from > maxBytes) {
+                throw new IllegalArgumentException("too big header");
+            }
+            return -1;
+        }
+        if (newline == from || in.getByte(newline - 1) != '\r') {
+            throw new IllegalArgumentException("expected CRLF");
+        }
+        return newline - 1;
+    }
+
+    private static long parseLength(ByteBuf in, int from, int to) {
+        boolean negative = from < to && in.getByte(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to || to - i > 18) {
+            throw new IllegalArgumentException("invalid length");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            byte digit = in.getByte(i);
+            if (digit < '0' || digit > '9') {
+                throw new IllegalArgumentException("invalid length");
+            }
+            value = value * 10 + (digit - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
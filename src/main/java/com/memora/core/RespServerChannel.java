@@ -0,0 +1,436 @@
+package com.memora.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import com.memora.messages.KeyCommand;
+import com.memora.messages.KeyCommandBatch;
+import com.memora.messages.PutCommand;
+import com.memora.messages.PutCommandBatch;
+import com.memora.messages.RpcRequest;
+import com.memora.messages.RpcResponse;
+import com.memora.messages.RpcStatus;
+import com.memora.model.ServerOptions;
+import com.memora.services.ExecutionStage;
+import com.memora.utils.ResponseFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pipeline of a connection speaking RESP2, so Redis clients and tools such
+ * as redis-benchmark can talk to the node. GET, SET, MGET, MSET, DEL and
+ * EXPIRE are turned into requests built straight from their arguments and
+ * run on the execution stage like any other; PING, QUIT and COMMAND are
+ * answered on the spot.
+ *
+ * Commands may be pipelined. RESP has no correlation IDs, so replies are
+ * held until those of the commands before them are written: each command
+ * takes a slot in a queue when decoded, and the slots are written from the
+ * head as they complete. MGET reads its keys in one batch per lane. DEL and
+ * EXPIRE read each key and then delete or rewrite it on the same lane, which
+ * tells whether it existed, as their replies need to.
+ */
+@Slf4j
+public class RespServerChannel extends ChannelInitializer<Channel> {
+
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PONG = "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NIL = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY_ARRAY = "*0\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ExecutionStage executionStage;
+    private final int maxInFlight;
+
+    public RespServerChannel(ExecutionStage executionStage, ServerOptions options) {
+        this.executionStage = executionStage;
+        this.maxInFlight = options.getMaxInFlight();
+    }
+
+    /**
+     * A command's place in the order of replies, filled once it completes.
+     */
+    private static final class Slot {
+        private ByteBuf reply;
+        private boolean closes;
+    }
+
+    private class RespCommandHandler extends SimpleChannelInboundHandler<byte[][]> {
+
+        private final ReadThrottle throttle = new ReadThrottle(maxInFlight);
+        private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, byte[][] arguments) throws Exception {
+            Slot slot = new Slot();
+            slots.add(slot);
+            throttle.started(ctx.channel());
+            String name = new String(arguments[0], StandardCharsets.US_ASCII).toUpperCase();
+            try {
+                dispatch(ctx, slot, name, arguments);
+            } catch (IllegalArgumentException e) {
+                complete(ctx, slot, error(ctx, e.getMessage()));
+            }
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            throttle.update(ctx.channel());
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            slots.forEach(slot -> {
+                if (slot.reply != null) {
+                    slot.reply.release();
+                }
+            });
+            slots.clear();
+            ctx.fireChannelInactive();
+        }
+
+        private void dispatch(ChannelHandlerContext ctx, Slot slot, String name, byte[][] arguments) {
+            switch (name) {
+                case "GET" -> {
+                    arity(name, arguments, 2, 2);
+                    execute(ctx, slot, List.of(get(arguments[1])), null, responses -> value(ctx, responses[0]));
+                }
+                case "SET" -> {
+                    arity(name, arguments, 3, 5);
+                    PutCommand.Builder command = put(arguments[1], arguments[2]);
+                    if (arguments.length > 3) {
+                        expiry(command, ascii(arguments[3]), arguments.length > 4 ? ascii(arguments[4]) : null);
+                    }
+                    RpcRequest request = RpcRequest.newBuilder()
+                            .setPutCommand(PutCommandBatch.newBuilder().addCommands(command))
+                            .build();
+                    execute(ctx, slot, List.of(request), null, responses -> ok(ctx, responses[0]));
+                }
+                case "MGET" -> {
+                    arity(name, arguments, 2, Integer.MAX_VALUE);
+                    // One batch per lane, so each key is still read after the writes to it pipelined before
+                    int keys = arguments.length - 1;
+                    int[] batchOf = new int[keys];
+                    int[] positionOf = new int[keys];
+                    Map<Integer, Integer> batchOfLane = new HashMap<>();
+                    List<KeyCommandBatch.Builder> batches = new ArrayList<>();
+                    for (int i = 0; i < keys; i++) {
+                        String key = new String(arguments[i + 1], StandardCharsets.UTF_8);
+                        int batch = batchOfLane.computeIfAbsent(executionStage.laneOf(key), lane -> {
+                            batches.add(KeyCommandBatch.newBuilder());
+                            return batches.size() - 1;
+                        });
+                        batchOf[i] = batch;
+                        positionOf[i] = batches.get(batch).getCommandsCount();
+                        batches.get(batch).addCommands(KeyCommand.newBuilder().setKey(key));
+                    }
+                    List<RpcRequest> requests = new ArrayList<>(batches.size());
+                    for (KeyCommandBatch.Builder batch : batches) {
+                        requests.add(RpcRequest.newBuilder().setGetCommand(batch).build());
+                    }
+                    execute(ctx, slot, requests, null, responses -> values(ctx, responses, batchOf, positionOf));
+                }
+                case "MSET" -> {
+                    if (arguments.length < 3 || arguments.length % 2 == 0) {
+                        throw new IllegalArgumentException("wrong number of arguments for 'mset' command");
+                    }
+                    PutCommandBatch.Builder batch = PutCommandBatch.newBuilder();
+                    for (int i = 1; i < arguments.length; i += 2) {
+                        batch.addCommands(put(arguments[i], arguments[i + 1]));
+                    }
+                    RpcRequest request = RpcRequest.newBuilder().setPutCommand(batch).build();
+                    execute(ctx, slot, List.of(request), null, responses -> ok(ctx, responses[0]));
+                }
+                case "DEL" -> {
+                    arity(name, arguments, 2, Integer.MAX_VALUE);
+                    List<RpcRequest> requests = new ArrayList<>(arguments.length - 1);
+                    for (int i = 1; i < arguments.length; i++) {
+                        requests.add(get(arguments[i]));
+                    }
+                    // Only keys found are deleted, and counted
+                    execute(ctx, slot, requests, (request, read) -> read.getStatus() == RpcStatus.OK ? delete(request) : null,
+                            responses -> count(ctx, responses));
+                }
+                case "EXPIRE" -> {
+                    arity(name, arguments, 3, 3);
+                    long seconds = parseLong(arguments[2]);
+                    // Rewritten with its value and the new expiry, or deleted if that is already past
+                    BiFunction<RpcRequest, RpcResponse, RpcRequest> followUp = (request, read) -> {
+                        if (read.getStatus() != RpcStatus.OK) {
+                            return null;
+                        }
+                        if (seconds <= 0) {
+                            return delete(request);
+                        }
+                        return RpcRequest.newBuilder()
+                                .setPutCommand(PutCommandBatch.newBuilder().addCommands(PutCommand.newBuilder()
+                                        .setKey(keyOf(request))
+                                        .setValue(read.getValue())
+                                        .setExpireInSeconds(seconds)))
+                                .build();
+                    };
+                    execute(ctx, slot, List.of(get(arguments[1])), followUp, responses -> count(ctx, responses));
+                }
+                case "PING" -> complete(ctx, slot, arguments.length > 1 ? bulk(ctx, arguments[1]) : wrap(ctx, PONG));
+                case "QUIT" -> {
+                    slot.closes = true;
+                    complete(ctx, slot, wrap(ctx, OK));
+                }
+                // Asked by redis-cli on connecting, no command table is published
+                case "COMMAND" -> complete(ctx, slot, wrap(ctx, EMPTY_ARRAY));
+                default -> complete(ctx, slot, error(ctx, "unknown command '" + name.toLowerCase() + "'"));
+            }
+        }
+
+        /**
+         * Runs the requests on the execution stage, each followed by the
+         * follow-up built from it and its response if any, and fills the
+         * slot with the reply encoded from the responses once all are in.
+         */
+        private void execute(ChannelHandlerContext ctx, Slot slot, List<RpcRequest> requests,
+                BiFunction<RpcRequest, RpcResponse, RpcRequest> followUp, Function<RpcResponse[], ByteBuf> encoder) {
+            RpcResponse[] responses = new RpcResponse[requests.size()];
+            int[] remaining = {requests.size()}; // Only counted down on the event loop
+            for (int i = 0; i < requests.size(); i++) {
+                int index = i;
+                RpcRequest request = requests.get(i);
+                Consumer<RpcResponse> callback = response -> onEventLoop(ctx, () -> {
+                    responses[index] = response;
+                    if (--remaining[0] == 0) {
+                        complete(ctx, slot, encoder.apply(responses));
+                    }
+                });
+                if (followUp == null) {
+                    executionStage.submit(request, callback);
+                } else {
+                    executionStage.submit(request, response -> followUp.apply(request, response), callback);
+                }
+            }
+        }
+
+        // Writes every reply at the head of the queue that is ready, in one flush
+        private void complete(ChannelHandlerContext ctx, Slot slot, ByteBuf reply) {
+            if (!ctx.channel().isActive()) {
+                reply.release();
+                return;
+            }
+            slot.reply = reply;
+            boolean written = false;
+            while (!slots.isEmpty() && slots.peek().reply != null) {
+                Slot head = slots.poll();
+                throttle.finished(ctx.channel());
+                if (head.closes) {
+                    ctx.writeAndFlush(head.reply).addListener(ChannelFutureListener.CLOSE);
+                    return;
+                }
+                ctx.write(head.reply);
+                written = true;
+            }
+            if (written) {
+                ctx.flush();
+            }
+        }
+    }
+
+    private static void onEventLoop(ChannelHandlerContext ctx, Runnable task) {
+        if (ctx.executor().inEventLoop()) {
+            task.run();
+        } else {
+            ctx.executor().execute(task);
+        }
+    }
+
+    private static RpcRequest get(byte[] key) {
+        return RpcRequest.newBuilder()
+                .setGetCommand(KeyCommandBatch.newBuilder()
+                        .addCommands(KeyCommand.newBuilder().setKey(new String(key, StandardCharsets.UTF_8))))
+                .build();
+    }
+
+    // Deletes the key a single key read was for
+    private static RpcRequest delete(RpcRequest read) {
+        return RpcRequest.newBuilder()
+                .setDeleteCommand(read.getGetCommand())
+                .build();
+    }
+
+    private static String keyOf(RpcRequest read) {
+        return read.getGetCommand().getCommands(0).getKey();
+    }
+
+    // The argument arrays are the decoder's own copies, so values wrap them as they are
+    private static PutCommand.Builder put(byte[] key, byte[] value) {
+        return PutCommand.newBuilder()
+                .setKey(new String(key, StandardCharsets.UTF_8))
+                .setValue(UnsafeByteOperations.unsafeWrap(value));
+    }
+
+    private static void expiry(PutCommand.Builder command, String option, String argument) {
+        if (argument == null) {
+            throw new IllegalArgumentException("syntax error");
+        }
+        long amount = parseLong(argument.getBytes(StandardCharsets.US_ASCII));
+        if (amount <= 0) {
+            throw new IllegalArgumentException("invalid expire time in 'set' command");
+        }
+        switch (option.toUpperCase()) {
+            case "EX" -> command.setExpireInSeconds(amount);
+            case "PX" -> command.setExpireAtTimestamp(System.currentTimeMillis() + amount);
+            case "EXAT" -> command.setExpireAtTimestamp(amount * 1000L);
+            case "PXAT" -> command.setExpireAtTimestamp(amount);
+            default -> throw new IllegalArgumentException("syntax error");
+        }
+    }
+
+    private static void arity(String name, byte[][] arguments, int min, int max) {
+        if (arguments.length < min || arguments.length > max) {
+            throw new IllegalArgumentException("wrong number of arguments for '" + name.toLowerCase() + "' command");
+        }
+    }
+
+    private static long parseLong(byte[] argument) {
+        try {
+            return Long.parseLong(ascii(argument));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("value is not an integer or out of range");
+        }
+    }
+
+    private static String ascii(byte[] argument) {
+        return new String(argument, StandardCharsets.US_ASCII);
+    }
+
+    private static ByteBuf value(ChannelHandlerContext ctx, RpcResponse response) {
+        return switch (response.getStatus()) {
+            case OK -> bulk(ctx, response.getValue());
+            case NOT_FOUND -> wrap(ctx, NIL);
+            default -> error(ctx, response);
+        };
+    }
+
+    // Puts the values of the batches back in the order of the keys
+    private static ByteBuf values(ChannelHandlerContext ctx, RpcResponse[] responses, int[] batchOf, int[] positionOf) {
+        for (RpcResponse response : responses) {
+            RpcStatus status = response.getStatus();
+            if (status != RpcStatus.OK && status != RpcStatus.NOT_FOUND && status != RpcStatus.PARTIAL_FULFILLMENT) {
+                return error(ctx, response);
+            }
+        }
+        // A batch of one key is answered as a single read, with no bitmap
+        ByteString[] values = new ByteString[batchOf.length];
+        int size = 16;
+        for (int i = 0; i < batchOf.length; i++) {
+            RpcResponse response = responses[batchOf[i]];
+            boolean single = response.getValuesCount() == 0;
+            if (single ? response.getStatus() == RpcStatus.OK : ResponseFactory.isFound(response, positionOf[i])) {
+                values[i] = single ? response.getValue() : response.getValues(positionOf[i]);
+                size += values[i].size();
+            }
+            size += 16;
+        }
+        ByteBuf reply = ctx.alloc().buffer(size);
+        header(reply, '*', values.length);
+        for (ByteString value : values) {
+            if (value != null) {
+                bulk(reply, value);
+            } else {
+                reply.writeBytes(NIL);
+            }
+        }
+        return reply;
+    }
+
+    private static ByteBuf ok(ChannelHandlerContext ctx, RpcResponse response) {
+        return response.getStatus() == RpcStatus.OK ? wrap(ctx, OK) : error(ctx, response);
+    }
+
+    // Replies with how many keys were found and acted on
+    private static ByteBuf count(ChannelHandlerContext ctx, RpcResponse[] responses) {
+        int count = 0;
+        for (RpcResponse response : responses) {
+            if (response.getStatus() == RpcStatus.OK) {
+                count++;
+            } else if (response.getStatus() != RpcStatus.NOT_FOUND) {
+                return error(ctx, response);
+            }
+        }
+        ByteBuf reply = ctx.alloc().buffer(16);
+        header(reply, ':', count);
+        return reply;
+    }
+
+    private static ByteBuf bulk(ChannelHandlerContext ctx, ByteString value) {
+        ByteBuf reply = ctx.alloc().buffer(value.size() + 16);
+        bulk(reply, value);
+        return reply;
+    }
+
+    private static ByteBuf bulk(ChannelHandlerContext ctx, byte[] value) {
+        return bulk(ctx, UnsafeByteOperations.unsafeWrap(value));
+    }
+
+    private static void bulk(ByteBuf reply, ByteString value) {
+        header(reply, '$', value.size());
+        for (ByteBuffer chunk : value.asReadOnlyByteBufferList()) {
+            reply.writeBytes(chunk);
+        }
+        reply.writeBytes(CRLF);
+    }
+
+    private static void header(ByteBuf reply, char type, long length) {
+        reply.writeByte(type);
+        ByteBufUtil.writeAscii(reply, Long.toString(length));
+        reply.writeBytes(CRLF);
+    }
+
+    private static ByteBuf wrap(ChannelHandlerContext ctx, byte[] reply) {
+        return ctx.alloc().buffer(reply.length).writeBytes(reply);
+    }
+
+    // BUSY keeps its name, so clients can tell a shed request they may retry
+    private static ByteBuf error(ChannelHandlerContext ctx, RpcResponse response) {
+        String prefix = response.getStatus() == RpcStatus.BUSY ? "BUSY " : "ERR ";
+        String message = response.getResponse().isEmpty() ? response.getStatus().name() : response.getResponse();
+        return simple(ctx, '-', prefix + message);
+    }
+
+    private static ByteBuf error(ChannelHandlerContext ctx, String message) {
+        return simple(ctx, '-', "ERR " + message);
+    }
+
+    private static ByteBuf simple(ChannelHandlerContext ctx, char type, String message) {
+        ByteBuf reply = ctx.alloc().buffer(message.length() + 3);
+        reply.writeByte(type);
+        // Simple strings cannot hold line breaks
+        ByteBufUtil.writeUtf8(reply, message.replace('\r', ' ').replace('\n', ' '));
+        reply.writeBytes(CRLF);
+        return reply;
+    }
+
+    @Override
+    protected void initChannel(Channel channel) throws Exception {
+        ChannelPipeline pipeline = channel.pipeline();
+        pipeline.addLast(MemoraServerChannel.newFlushConsolidation());
+        pipeline.addLast(new RespDecoder());
+        pipeline.addLast(new RespCommandHandler());
+    }
+}
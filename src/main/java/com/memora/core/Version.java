@@ -1,18 +1,24 @@
 package com.memora.core;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
+/**
+ * Summary of the versions of this node, advertised to its peers. Each bucket
+ * counts its own mutations and the WAL sequences its records on its own, so
+ * nothing bumps a node-wide counter on the write path any more: this only
+ * reads the last version the WAL handed out.
+ */
 public final class Version {
-    private final static AtomicLong version = new AtomicLong(1);
+    private static volatile LongSupplier source = () -> 0;
 
     private Version() {}
 
-    public static Long increment() {
-        return version.incrementAndGet();
-    }
-    
     public static long get() {
-        return version.get();
+        return source.getAsLong();
+    }
+
+    // Called once by the WAL of this node
+    public static void track(LongSupplier lastVersion) {
+        source = lastVersion;
     }
-    
 }
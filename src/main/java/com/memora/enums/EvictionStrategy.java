@@ -0,0 +1,6 @@
+package com.memora.enums;
+
+// Policy used by a bucket to pick keys to drop once it runs over its memory budget
+public enum EvictionStrategy {
+    LRU, LFU, TINY_LFU
+}
@@ -7,6 +7,8 @@ public enum Operations {
     NODE("NODE"),
     CLUSTER("CLUSTER"),
     INFO("INFO"),
+    WAL("WAL"),
+    REPLICATION("REPLICATION"),
     UNKNOWN("UNKNOWN");
 
     private final String operation;
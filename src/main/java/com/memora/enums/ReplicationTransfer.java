@@ -0,0 +1,6 @@
+package com.memora.enums;
+
+// How WAL ranges reach a replica catching up: copied through the heap, or sent from the segment files with sendfile
+public enum ReplicationTransfer {
+    COPY, ZERO_COPY
+}
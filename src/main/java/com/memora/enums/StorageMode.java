@@ -0,0 +1,6 @@
+package com.memora.enums;
+
+// Where a bucket keeps its keys and values
+public enum StorageMode {
+    HEAP, OFF_HEAP
+}
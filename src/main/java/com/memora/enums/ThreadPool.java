@@ -12,7 +12,14 @@ public enum ThreadPool {
     SERVER_THREAD_POOL("server-thread", 7, false, Thread.MAX_PRIORITY),
     GOSSIP_THREAD_POOL("gossip-thread", 5),
     CLIENT_THREAD_POOL("client-thread", 7, true, Thread.MAX_PRIORITY),
-    REPLICATION_THREAD_POOL("replication-thread", 5, Thread.MAX_PRIORITY);
+    REPLICATION_THREAD_POOL("replication-thread", 5, Thread.MAX_PRIORITY),
+    EXPIRY_THREAD_POOL("expiry-thread", 2, false, true, Thread.NORM_PRIORITY),
+    WAL_THREAD_POOL("wal-thread", 1, false, true, Thread.MAX_PRIORITY),
+    SNAPSHOT_THREAD_POOL("snapshot-thread", 1, false, true, Thread.MIN_PRIORITY),
+    COMPACTION_THREAD_POOL("compaction-thread", 1, false, true, Thread.MIN_PRIORITY),
+    EXECUTION_THREAD_POOL("execution-thread", Runtime.getRuntime().availableProcessors(), false, true, Thread.MAX_PRIORITY), // One lane per thread
+    CLUSTER_OPERATION_THREAD_POOL("cluster-operation-thread", 16, false, true, Thread.NORM_PRIORITY),
+    RECOVERY_THREAD_POOL("recovery-thread", Runtime.getRuntime().availableProcessors(), false, true, Thread.MAX_PRIORITY);
 
 
     private final String threadName;
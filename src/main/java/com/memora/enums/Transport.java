@@ -0,0 +1,6 @@
+package com.memora.enums;
+
+// How the server talks to sockets: native epoll when the platform has it, otherwise NIO, or either one forced
+public enum Transport {
+    AUTO, EPOLL, NIO
+}
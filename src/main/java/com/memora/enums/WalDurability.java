@@ -0,0 +1,6 @@
+package com.memora.enums;
+
+// When a write waits for its WAL record to reach the disk: never, within the sync interval, or before it is acknowledged
+public enum WalDurability {
+    NONE, PERIODIC, BATCH
+}
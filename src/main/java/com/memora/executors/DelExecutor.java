@@ -1,35 +1,104 @@
 package com.memora.executors;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import com.google.inject.Inject;
 import com.memora.core.MemoraNode;
 import com.memora.messages.KeyCommand;
 import com.memora.messages.KeyCommandBatch;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
+import com.memora.messages.RpcStatus;
 import com.memora.store.WAL;
 
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class DelExecutor extends Executor {
 
     private final MemoraNode node;
+    private final WAL wal;
 
 
     @Inject
     public DelExecutor(
-        final MemoraNode node
+        final MemoraNode node,
+        final WAL wal
     ) {
         this.node = node;
+        this.wal = wal;
     }
 
     @Override
     public RpcResponse execute(RpcRequest request) {
-        KeyCommandBatch commandBatch = request.getDeleteCommand();
-        WAL.log(request);
+        return execute(request, route(request));
+    }
 
-        for (KeyCommand command : commandBatch.getCommandsList()) {
-            node.delete(command.getKey());
+    @Override
+    public RpcResponse execute(RpcRequest request, Map<String, List<String>> keysByNode) {
+        if (keysByNode != null) {
+            return scatter(request, keysByNode);
         }
+        List<String> keys = keysOf(request.getDeleteCommand());
+        wal.apply(request, version -> node.deleteAll(keys, version));
 
         return OK(request);
     }
 
+    /**
+     * A delete is sent on when a primary is asked to delete keys some other
+     * primary owns.
+     */
+    @Override
+    public Map<String, List<String>> route(RpcRequest request) {
+        if (!fansOut(request)) {
+            return null;
+        }
+        Map<String, List<String>> keysByNode = node.getKeyToNodeMap(keysOf(request.getDeleteCommand()));
+        return isRemote(keysByNode) ? keysByNode : null;
+    }
+
+    /**
+     * Deletes a batch spanning several primaries. The keys of each other node
+     * are sent to it as one batch, all before the local keys are deleted, and
+     * the response waits for every node. Keys left on nodes that failed are
+     * reported; the others stay deleted.
+     */
+    private RpcResponse scatter(RpcRequest request, Map<String, List<String>> keysByNode) {
+        Map<String, List<String>> remoteKeys = new HashMap<>(keysByNode);
+        List<String> localKeys = remoteKeys.remove(MemoraNode.getInfo().getNodeId());
+        Map<String, CompletableFuture<RpcResponse>> pending = node.forwardDelete(remoteKeys);
+
+        if (localKeys != null) {
+            // Logged with only the local keys, the others are not this node's to replay or replicate
+            KeyCommandBatch.Builder localBatch = KeyCommandBatch.newBuilder();
+            localKeys.forEach(key -> localBatch.addCommands(KeyCommand.newBuilder().setKey(key)));
+            RpcRequest localRequest = request.toBuilder().setDeleteCommand(localBatch).build();
+            wal.apply(localRequest, version -> node.deleteAll(localKeys, version));
+        }
+
+        List<String> failedNodes = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<RpcResponse>> entry : pending.entrySet()) {
+            try {
+                RpcResponse response = entry.getValue().join();
+                if (response.getStatus() != RpcStatus.OK) {
+                    log.error("Node {} failed to delete {} keys: {}", entry.getKey(), remoteKeys.get(entry.getKey()).size(), response.getResponse());
+                    failedNodes.add(entry.getKey());
+                }
+            } catch (CompletionException e) {
+                log.error("Failed to delete {} keys on node {}: {}", remoteKeys.get(entry.getKey()).size(), entry.getKey(), e.getMessage());
+                failedNodes.add(entry.getKey());
+            }
+        }
+        if (failedNodes.isEmpty()) {
+            return OK(request);
+        }
+        return respond(request, RpcStatus.PARTIAL_FULFILLMENT, "Failed to delete keys on nodes: " + String.join(", ", failedNodes));
+    }
+
 }
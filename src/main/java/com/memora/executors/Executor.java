@@ -1,6 +1,13 @@
 package com.memora.executors;
 
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.ByteString;
+import com.memora.core.MemoraNode;
 import com.memora.enums.Operations;
+import com.memora.messages.KeyCommand;
+import com.memora.messages.KeyCommandBatch;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
 import com.memora.messages.RpcStatus;
@@ -13,6 +20,31 @@ import lombok.extern.slf4j.Slf4j;
 public abstract class Executor {
     abstract public RpcResponse execute(RpcRequest request);
 
+    /**
+     * Executes the request with its keys already grouped by {@link #route(RpcRequest)}.
+     */
+    public RpcResponse execute(RpcRequest request, Map<String, List<String>> keysByNode) {
+        return execute(request);
+    }
+
+    /**
+     * Whether executing the request may wait on another node, in which case
+     * it is kept off the threads serving this node's buckets. Requests with
+     * a route always may.
+     */
+    public boolean mayBlock(RpcRequest request) {
+        return false;
+    }
+
+    /**
+     * Groups the keys of a request this node splits between their owners by
+     * owning node, or returns null if it runs here alone. Worked out once,
+     * as the request is submitted, and handed on to its execution.
+     */
+    public Map<String, List<String>> route(RpcRequest request) {
+        return null;
+    }
+
     public RpcResponse OK(RpcRequest request) {
         return respond(request, RpcStatus.OK);
     }
@@ -21,6 +53,10 @@ public abstract class Executor {
         return respond(request, RpcStatus.OK, response);
     }
 
+    public RpcResponse OK(RpcRequest request, ByteString value) {
+        return ResponseFactory.create(RpcStatus.OK, request, value);
+    }
+
     public RpcResponse UNSUPPORTED_OPERATION(RpcRequest request) {
         return respond(request, RpcStatus.UNSUPPORTED_OPERATION);
     }
@@ -53,6 +89,26 @@ public abstract class Executor {
         return ResponseFactory.create(status, request);
     }
 
+    /**
+     * Whether the keys of the request are split between the primaries owning
+     * them: only on a primary, and never for a request another node already
+     * split, so a stale bucket map cannot bounce keys between nodes.
+     */
+    protected static boolean fansOut(RpcRequest request) {
+        return MemoraNode.getInfo().isPrimary() && !request.hasNodeVersion();
+    }
+
+    /**
+     * Whether any of the keys, grouped by owning node, belongs to another node.
+     */
+    protected static boolean isRemote(Map<String, List<String>> keysByNode) {
+        return keysByNode.size() > 1 || !keysByNode.containsKey(MemoraNode.getInfo().getNodeId());
+    }
+
+    protected static List<String> keysOf(KeyCommandBatch commandBatch) {
+        return commandBatch.getCommandsList().stream().map(KeyCommand::getKey).toList();
+    }
+
     public static Operations commandOf(final CommandCase commandCase) {
         return switch (commandCase) {
             case GET_COMMAND -> Operations.GET;
@@ -61,6 +117,8 @@ public abstract class Executor {
             case NODE_COMMAND -> Operations.NODE;
             case INFO_COMMAND -> Operations.INFO;
             case CLUSTER_COMMAND -> Operations.CLUSTER;
+            case WAL_COMMAND -> Operations.WAL;
+            case REPLICATION_BATCH -> Operations.REPLICATION;
             case COMMAND_NOT_SET -> Operations.UNKNOWN;
         };
     }
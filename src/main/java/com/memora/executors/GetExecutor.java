@@ -1,18 +1,27 @@
 package com.memora.executors;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 import com.google.inject.Inject;
+import com.google.protobuf.ByteString;
 import com.memora.core.MemoraNode;
-import com.memora.messages.KeyCommand;
 import com.memora.messages.KeyCommandBatch;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
 import com.memora.messages.RpcStatus;
 import com.memora.model.CacheEntry;
+import com.memora.utils.ResponseFactory;
 
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class GetExecutor extends Executor {
 
     private final MemoraNode memoraNode;
@@ -26,27 +35,116 @@ public class GetExecutor extends Executor {
 
     @Override
     public RpcResponse execute(RpcRequest request) {
+        return execute(request, route(request));
+    }
+
+    @Override
+    public RpcResponse execute(RpcRequest request, Map<String, List<String>> keysByNode) {
         KeyCommandBatch commandBatch = request.getGetCommand();
+        if (keysByNode != null) {
+            return scatterGather(request, keysOf(commandBatch), keysByNode);
+        }
 
-        RpcStatus status = RpcStatus.OK;
+        if (commandBatch.getCommandsCount() == 1) {
+            return single(request, getLocal(commandBatch.getCommands(0).getKey()));
+        }
+        return batch(request, keysOf(commandBatch), this::getLocal);
+    }
 
-        List<String> values = new ArrayList<>();
-        for (KeyCommand command : commandBatch.getCommandsList()) {
-            CacheEntry entry = memoraNode.get(command.getKey());
-            if (Objects.isNull(entry)) {
-                status = RpcStatus.PARTIAL_FULFILLMENT;
-                values.add(null);
-            } else {
-                values.add(entry.getValue());
+    /**
+     * A read is sent on when a primary is asked for keys some other primary
+     * owns, a single key included.
+     */
+    @Override
+    public Map<String, List<String>> route(RpcRequest request) {
+        if (!fansOut(request)) {
+            return null;
+        }
+        Map<String, List<String>> keysByNode = memoraNode.getKeyToNodeMap(keysOf(request.getGetCommand()));
+        return isRemote(keysByNode) ? keysByNode : null;
+    }
+
+    /**
+     * Reads a batch spanning several primaries. The keys of each other node
+     * are sent to it as one batch, all before the local keys are read, so the
+     * whole read takes a single round of hops made in parallel. Values are
+     * put back in the order of the request once every node has answered, a
+     * single key is answered as a single read.
+     */
+    private RpcResponse scatterGather(RpcRequest request, List<String> keys, Map<String, List<String>> keysByNode) {
+        Map<String, List<String>> remoteKeys = new HashMap<>(keysByNode);
+        List<String> localKeys = remoteKeys.remove(MemoraNode.getInfo().getNodeId());
+        Map<String, CompletableFuture<RpcResponse>> pending = memoraNode.forwardGet(remoteKeys);
+
+        Map<String, ByteString> values = new HashMap<>();
+        if (localKeys != null) {
+            for (String key : localKeys) {
+                ByteString value = getLocal(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
             }
         }
+        for (Map.Entry<String, CompletableFuture<RpcResponse>> entry : pending.entrySet()) {
+            String nodeId = entry.getKey();
+            List<String> nodeKeys = remoteKeys.get(nodeId);
+            RpcResponse response;
+            try {
+                response = entry.getValue().join();
+            } catch (CompletionException e) {
+                log.error("Failed to read {} keys from node {}: {}", nodeKeys.size(), nodeId, e.getMessage());
+                return ERROR(request, "Failed to read keys from node " + nodeId);
+            }
+            RpcStatus status = response.getStatus();
+            if (status != RpcStatus.OK && status != RpcStatus.NOT_FOUND && status != RpcStatus.PARTIAL_FULFILLMENT) {
+                return ERROR(request, "Failed to read keys from node " + nodeId + ": " + response.getResponse());
+            }
+            // A single key comes back as a single read, with no bitmap
+            if (nodeKeys.size() == 1) {
+                if (status == RpcStatus.OK) {
+                    values.put(nodeKeys.get(0), response.getValue());
+                }
+                continue;
+            }
+            for (int i = 0; i < nodeKeys.size(); i++) {
+                if (ResponseFactory.isFound(response, i)) {
+                    values.put(nodeKeys.get(i), response.getValues(i));
+                }
+            }
+        }
+        if (keys.size() == 1) {
+            return single(request, values.get(keys.get(0)));
+        }
+        return batch(request, keys, values::get);
+    }
 
-        if (values.size() == 1) {
-            if (Objects.isNull(values.get(0))) return NOT_FOUND(request);
-            else return OK(request, values.get(0));
+    // Single key reads hand back the stored bytes as they are
+    private RpcResponse single(RpcRequest request, ByteString value) {
+        return Objects.isNull(value) ? NOT_FOUND(request) : OK(request, value);
+    }
+
+    // Values go out as stored, missing keys as empty values left out of the bitmap
+    private RpcResponse batch(RpcRequest request, List<String> keys, Function<String, ByteString> lookup) {
+        RpcStatus status = RpcStatus.OK;
+        List<ByteString> values = new ArrayList<>(keys.size());
+        byte[] found = new byte[(keys.size() + 7) / 8];
+        for (int i = 0; i < keys.size(); i++) {
+            ByteString value = lookup.apply(keys.get(i));
+            if (Objects.isNull(value)) {
+                status = RpcStatus.PARTIAL_FULFILLMENT;
+                values.add(ByteString.EMPTY);
+            } else {
+                found[i >> 3] |= (byte) (1 << (i & 7));
+                values.add(value);
+            }
         }
+        return ResponseFactory.create(status, request, values, found);
+    }
 
-        return respond(request, status, values);
+    private ByteString getLocal(String key) {
+        CacheEntry entry = memoraNode.get(key);
+        return Objects.isNull(entry) ? null : entry.getValue();
     }
+
     
 }
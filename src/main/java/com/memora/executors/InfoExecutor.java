@@ -31,6 +31,9 @@ public class InfoExecutor extends Executor {
                     case ALL -> OK(request, Parser.toJson(MemoraNode.getInfo()));
                     case MAX_QPS -> OK(request, String.valueOf(MemoraNode.getInfo().getMaxQps()));
                     case CURRENT_QPS -> OK(request, String.valueOf(MemoraNode.getInfo().getCurrentQps()));
+                    case WAL -> OK(request, Parser.toJson(node.getWalStats()));
+                    case SNAPSHOT -> OK(request, Parser.toJson(node.getSnapshotStats()));
+                    case RECOVERY -> OK(request, Parser.toJson(node.getRecoveryStats()));
                     default -> UNSUPPORTED_OPERATION(request, "Invalid sub-command for InfoCommand " + nodeInfoRequest.getType());
                 };
             }
@@ -40,6 +43,7 @@ public class InfoExecutor extends Executor {
 
                 yield switch (bucketInfoRequest.getType()) {
                     case MAP -> OK(request, Parser.toJson(node.getAllBuckets()));
+                    case STATS -> OK(request, Parser.toJson(node.getBucketStats()));
                     default -> UNSUPPORTED_OPERATION(request, "Invalid sub-command for InfoCommand " + bucketInfoRequest.getType());
                 };
             }
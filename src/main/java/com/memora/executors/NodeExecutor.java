@@ -6,6 +6,7 @@ import com.memora.messages.NodeAddress;
 import com.memora.messages.NodeCommand;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
+import com.memora.messages.NodeCommand.CatchUpCommand;
 import com.memora.messages.NodeCommand.PrimarizeCommand;
 import com.memora.messages.NodeCommand.ReplicateCommand;
 
@@ -32,6 +33,12 @@ public class NodeExecutor extends Executor {
                 handlePrimarize(command);
             case REPLICATE ->
                 handleReplicate(command, request.getClusterEpoch());
+            case CATCH_UP -> {
+                CatchUpCommand catchUp = command.getCatchUp();
+                if (!node.catchUp(catchUp.getFromVersion(), catchUp.getToVersion())) {
+                    return ERROR(request, "Failed to catch up from version " + catchUp.getFromVersion());
+                }
+            }
             default -> {
                 return UNSUPPORTED_OPERATION(request, "Invalid sub-command for NodeCommand: " + command.getCommandCase());
             }
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 import com.google.inject.Inject;
 import com.memora.core.MemoraNode;
@@ -23,61 +22,121 @@ public class PutExecutor extends Executor {
     private static final String EXACT_EXPIRY = "EXAT";
 
     private final MemoraNode node;
+    private final WAL wal;
 
     @Inject
     public PutExecutor(
-        final MemoraNode node
+        final MemoraNode node,
+        final WAL wal
     ) {
         this.node = node;
+        this.wal = wal;
     }
 
     @Override
     public RpcResponse execute(RpcRequest request) {
+        return execute(request, route(request));
+    }
+
+    @Override
+    public RpcResponse execute(RpcRequest request, Map<String, List<String>> nodeToKeysMap) {
 
         NodeInfo currentNode = MemoraNode.getInfo();
-        if (currentNode.isReplica() && Objects.isNull(request.getNodeVersion())) {
+        if (forwardsToPrimary(currentNode, request)) {
             return node.forwardToPrimary(request).setCorrelationId(request.getCorrelationId()).build();
         }
 
-        Map<String, CacheEntry> entries = parsePutCommand(request);
+        if (nodeToKeysMap != null) {
+            return scatter(request, nodeToKeysMap);
+        }
+
+        Map<String, CacheEntry> entries = parsePutCommand(request.getPutCommand(), System.currentTimeMillis());
         List<String> keys = new ArrayList<>(entries.keySet());
 
-        if (currentNode.isPrimary()) {
-            Map<String, List<String>> nodeToKeysMap = node.getKeyToNodeMap(keys);
-            if (nodeToKeysMap.size() > 1) {
-                Map<String, List<CacheEntry>> entriesByNode = new HashMap<>();
-                for (Map.Entry<String, List<String>> entry : nodeToKeysMap.entrySet()) {
-                    String nodeId = entry.getKey();
-                    for (String key : entry.getValue()) {
-                        entriesByNode.computeIfAbsent(nodeId, k -> new ArrayList<>()).add(entries.get(key));
-                    }
-                }
-                return node.forwardPut(entriesByNode).setCorrelationId(request.getCorrelationId()).build();
+        wal.apply(request, version -> {
+            if (entries.size() == 1) {
+                node.put(entries.get(keys.get(0)), version);
+            } else {
+                node.putAll(entries.values(), version);
             }
+        });
+        return OK(request);
+    }
+
+    /**
+     * A put waits on another node when a replica forwards it to its primary.
+     */
+    @Override
+    public boolean mayBlock(RpcRequest request) {
+        return forwardsToPrimary(MemoraNode.getInfo(), request);
+    }
+
+    /**
+     * A put is sent on when a primary is asked to write keys some other
+     * primary owns, a single key included.
+     */
+    @Override
+    public Map<String, List<String>> route(RpcRequest request) {
+        if (!fansOut(request)) {
+            return null;
         }
+        // Each key once, the last put of a repeated one wins
+        List<String> keys = request.getPutCommand().getCommandsList().stream().map(PutCommand::getKey).distinct().toList();
+        Map<String, List<String>> nodeToKeysMap = node.getKeyToNodeMap(keys);
+        return isRemote(nodeToKeysMap) ? nodeToKeysMap : null;
+    }
 
-        WAL.log(request);
-        if (entries.size() == 1) {
-            node.put(entries.get(keys.get(0)));
-        } else {
-            node.putAll(entries.values());
+    /**
+     * Writes a batch spanning several primaries. The local keys are written
+     * here, logged with only their own commands, and each other node gets its
+     * entries as one batch. Keys left on nodes that failed are reported; the
+     * others stay written.
+     */
+    private RpcResponse scatter(RpcRequest request, Map<String, List<String>> nodeToKeysMap) {
+        String currentNodeId = MemoraNode.getInfo().getNodeId();
+        Map<String, PutCommand> commands = new HashMap<>();
+        request.getPutCommand().getCommandsList().forEach(command -> commands.put(command.getKey(), command));
+        Map<String, CacheEntry> entries = parsePutCommand(request.getPutCommand(), System.currentTimeMillis());
+
+        List<String> localKeys = nodeToKeysMap.get(currentNodeId);
+        if (localKeys != null) {
+            PutCommandBatch.Builder localBatch = PutCommandBatch.newBuilder();
+            localKeys.forEach(key -> localBatch.addCommands(commands.get(key)));
+            RpcRequest localRequest = request.toBuilder().setPutCommand(localBatch).build();
+            List<CacheEntry> localEntries = localKeys.stream().map(entries::get).toList();
+            wal.apply(localRequest, version -> node.putAll(localEntries, version));
         }
-        return OK(request);
+
+        Map<String, List<CacheEntry>> entriesByNode = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : nodeToKeysMap.entrySet()) {
+            if (!entry.getKey().equals(currentNodeId)) {
+                entriesByNode.put(entry.getKey(), entry.getValue().stream().map(entries::get).toList());
+            }
+        }
+        return node.forwardPut(entriesByNode).setCorrelationId(request.getCorrelationId()).build();
     }
 
-    private Map<String, CacheEntry> parsePutCommand(RpcRequest request) {
-        Map<String, CacheEntry> entries = new HashMap<>();
+    // Puts sent by the primary carry its version, anything else a replica gets comes from a client
+    private static boolean forwardsToPrimary(NodeInfo currentNode, RpcRequest request) {
+        return currentNode.isReplica() && !request.hasNodeVersion();
+    }
 
-        PutCommandBatch putCommandBatch = request.getPutCommand();
+    /**
+     * Builds the entries of a put, the last one winning for repeated keys.
+     * Relative expiries count from now, which the WAL replay sets to the time
+     * the put was logged.
+     */
+    public static Map<String, CacheEntry> parsePutCommand(PutCommandBatch putCommandBatch, long now) {
+        Map<String, CacheEntry> entries = new HashMap<>();
 
         for (PutCommand putCommand: putCommandBatch.getCommandsList()) {
             String key = putCommand.getKey();
             CacheEntry entry = CacheEntry.builder()
                     .key(key)
-                    .value(putCommand.getValue().toStringUtf8())
+                    .value(putCommand.getValue())
                     .ttl(switch (putCommand.getExpiryCase()) {
-                        case EXPIRE_IN_SECONDS -> getTTL(String.valueOf(putCommand.getExpireInSeconds()), EXPIRY);
-                        case EXPIRE_AT_TIMESTAMP -> getTTL(String.valueOf(putCommand.getExpireAtTimestamp()), EXACT_EXPIRY);
+                        case EXPIRE_IN_SECONDS -> getTTL(String.valueOf(putCommand.getExpireInSeconds()), EXPIRY, now);
+                        case EXPIRE_AT_TIMESTAMP -> getTTL(String.valueOf(putCommand.getExpireAtTimestamp()), EXACT_EXPIRY, now);
                         case EXPIRY_NOT_SET -> DEFAULT_EXPIRY;
                         default -> DEFAULT_EXPIRY;
                     })
@@ -89,11 +148,11 @@ public class PutExecutor extends Executor {
     }
 
 
-    private long getTTL(String value, String type) {
+    private static long getTTL(String value, String type, long now) {
         try {
             return switch (type.toUpperCase()) {
                 case EXPIRY -> {
-                   yield System.currentTimeMillis() + (Long.parseLong(value) * 1000L);
+                   yield now + (Long.parseLong(value) * 1000L);
             }
                 case EXACT_EXPIRY -> Long.parseLong(value);
                 default -> DEFAULT_EXPIRY;
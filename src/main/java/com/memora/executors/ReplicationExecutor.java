@@ -0,0 +1,30 @@
+package com.memora.executors;
+
+import com.memora.core.MemoraNode;
+import com.memora.messages.RpcRequest;
+import com.memora.messages.RpcResponse;
+import com.memora.messages.RpcStatus;
+
+/**
+ * Applies the batches of its primary's replication stream on a replica. The
+ * records name their bucket and carry raw values and absolute expiries, so
+ * they are written as they are, with no routing or command parsing.
+ */
+public class ReplicationExecutor extends Executor {
+
+    private final MemoraNode node;
+
+    public ReplicationExecutor(final MemoraNode node) {
+        this.node = node;
+    }
+
+    @Override
+    public RpcResponse execute(RpcRequest request) {
+        if (!MemoraNode.getInfo().isReplica()) {
+            return respond(request, RpcStatus.BAD_REQUEST, "Only replicas apply a replication stream");
+        }
+        node.applyReplication(request.getReplicationBatch());
+
+        return OK(request);
+    }
+}
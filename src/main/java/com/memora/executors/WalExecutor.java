@@ -0,0 +1,53 @@
+package com.memora.executors;
+
+import com.google.protobuf.UnsafeByteOperations;
+import com.memora.exceptions.MemoraException;
+import com.memora.messages.RpcRequest;
+import com.memora.messages.RpcResponse;
+import com.memora.messages.RpcStatus;
+import com.memora.messages.WalCommand;
+import com.memora.messages.WalCommand.RangeRequest;
+import com.memora.store.WAL;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves ranges of this node's WAL to replicas catching up, as raw frames of
+ * records they decode on their side. Zero-copy ranges are answered by the
+ * server channel itself, this only copies them when they are no longer on
+ * disk, and answers NOT_FOUND when there is nothing in range.
+ */
+@Slf4j
+public class WalExecutor extends Executor {
+
+    public static final int MAX_FRAME_BYTES = 4 * 1024 * 1024;
+
+    private final WAL wal;
+
+    public WalExecutor(final WAL wal) {
+        this.wal = wal;
+    }
+
+    @Override
+    public RpcResponse execute(RpcRequest request) {
+        WalCommand command = request.getWalCommand();
+
+        return switch (command.getCommandCase()) {
+            case RANGE -> range(request, command.getRange());
+            default -> UNSUPPORTED_OPERATION(request, "Invalid sub-command for WalCommand: " + command.getCommandCase());
+        };
+    }
+
+    private RpcResponse range(RpcRequest request, RangeRequest range) {
+        try {
+            byte[] frame = wal.range(range.getFromVersion(), range.getToVersion(), MAX_FRAME_BYTES);
+            if (frame.length == 0) {
+                return respond(request, RpcStatus.NOT_FOUND, "No WAL versions from " + range.getFromVersion());
+            }
+            // The frame is not touched again once handed over, no need to copy it
+            return OK(request, UnsafeByteOperations.unsafeWrap(frame));
+        } catch (MemoraException e) {
+            return respond(request, RpcStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.memora.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Point-in-time memory, eviction and expiry counters of a single bucket.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class BucketStats {
+    private final String bucketId;
+    private final long mutations; // Writes, and deletes of keys that were there, since the node started
+    private final int keys;
+    private final long usedBytes;
+    private final long maxBytes;
+    private final long evictions;
+    private final long expiredKeys;
+    private final long reclaimedBytes;
+    private final SlabStats slabs; // Only set for buckets stored off-heap
+}
@@ -1,5 +1,7 @@
 package com.memora.model;
 
+import com.google.protobuf.ByteString;
+
 import lombok.Builder;
 import lombok.Data;
 import lombok.NonNull;
@@ -14,6 +16,6 @@ import lombok.RequiredArgsConstructor;
 public class CacheEntry {
 
     @NonNull private final String key;
-    @NonNull private final String value;
+    @NonNull private final ByteString value; // Raw bytes as received on the wire, never decoded
     private final long ttl;
 }
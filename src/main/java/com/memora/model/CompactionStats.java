@@ -0,0 +1,24 @@
+package com.memora.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Outcome of the last compaction of the WAL's closed segments.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class CompactionStats {
+    private final long runs; // Compactions done since startup
+    private final long compactedAt;
+    private final int segments; // Segments merged into one
+    private final long recordsBefore;
+    private final long recordsAfter;
+    private final long bytesBefore;
+    private final long bytesAfter;
+    private final double ratio; // Bytes after over bytes before
+    private final long durationMillis;
+    private final long bytesPerSecond; // Bytes read from the segments per second
+}
@@ -0,0 +1,20 @@
+package com.memora.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * How long this node took to become ready after it was started, by phase.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class RecoveryStats {
+    private final long bootMillis; // From JVM start to the start of recovery
+    private final long snapshotLoadMillis;
+    private final long snapshotEntries;
+    private final long walReplayMillis;
+    private final long walRecords;
+    private final long timeToReadyMillis; // From JVM start to the end of recovery
+}
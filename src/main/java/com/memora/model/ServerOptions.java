@@ -0,0 +1,27 @@
+package com.memora.model;
+
+import com.memora.enums.Transport;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Socket settings the server binds and accepts connections with, and the
+ * limits past which it stops reading a connection or sheds requests.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class ServerOptions {
+    private final Transport transport;
+    private final int acceptors; // Sockets bound to the port with SO_REUSEPORT, epoll only
+    private final int backlog;
+    private final boolean tcpNoDelay;
+    private final int receiveBufferBytes; // 0 leaves the OS default
+    private final int sendBufferBytes; // 0 leaves the OS default
+    private final int maxInFlight; // Requests a connection may have executing before it stops being read
+    private final int maxQueued; // Requests waiting on a lane before new ones are answered BUSY
+    private final int maxQps; // Requests a second the node takes before answering BUSY, 0 for no limit
+    private final int respPort; // Port of the RESP2 listener, 0 for none
+}
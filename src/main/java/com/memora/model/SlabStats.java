@@ -0,0 +1,21 @@
+package com.memora.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Point-in-time usage of the off-heap slabs of a single bucket.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class SlabStats {
+    private final long capacityBytes; // Off-heap memory the bucket may reserve
+    private final long reservedBytes; // Pages currently carved into chunks of some size class
+    private final long chunkBytes; // Chunks handed out to entries
+    private final long payloadBytes; // Bytes of the records stored in those chunks
+    private final double internalFragmentation; // Share of handed out chunks lost to size class rounding
+    private final double externalFragmentation; // Share of reserved pages sitting in free chunks
+    private final long failedAllocations;
+}
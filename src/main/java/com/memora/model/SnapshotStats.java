@@ -0,0 +1,21 @@
+package com.memora.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Outcome of the last snapshot this node took.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class SnapshotStats {
+    private final long version; // WAL version the snapshot covers, replay resumes after it
+    private final long takenAt;
+    private final int buckets;
+    private final long entries;
+    private final long sizeBytes;
+    private final long durationMillis;
+    private final long bytesPerSecond;
+}
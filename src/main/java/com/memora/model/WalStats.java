@@ -0,0 +1,25 @@
+package com.memora.model;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Point-in-time size of the WAL and how far behind it each replica is.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class WalStats {
+    private final long sizeBytes;
+    private final long maxBytes;
+    private final int segments;
+    private final long oldestVersion;
+    private final long lastVersion;
+    private final long tailOldestVersion; // Oldest version still served from memory
+    private final Map<String, Long> replicaLag; // Versions each tracked replica has yet to acknowledge, by node ID
+    private final long resyncs; // Replicas dropped to a full resync for holding the WAL over its cap
+    private final CompactionStats compaction; // Null until closed segments have been compacted
+}
@@ -3,6 +3,9 @@ package com.memora.modules;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.memora.constants.Constants;
+import com.memora.enums.ReplicationTransfer;
 import com.memora.enums.ThreadPool;
 import com.memora.services.ClientManager;
 import com.memora.services.ThreadPoolService;
@@ -11,8 +14,9 @@ public class ClientModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public ClientManager provideClientManager(ThreadPoolService threadPoolService) {
-        return new ClientManager(threadPoolService);
+    public ClientManager provideClientManager(ThreadPoolService threadPoolService,
+            @Named(Constants.REPLICATION_TRANSFER) ReplicationTransfer replicationTransfer) {
+        return new ClientManager(threadPoolService, replicationTransfer);
     }
 
     @Provides
@@ -10,7 +10,10 @@ import com.memora.executors.GetExecutor;
 import com.memora.executors.InfoExecutor;
 import com.memora.executors.NodeExecutor;
 import com.memora.executors.PutExecutor;
+import com.memora.executors.ReplicationExecutor;
 import com.memora.executors.UnknownExecutor;
+import com.memora.executors.WalExecutor;
+import com.memora.store.WAL;
 
 public class CommandModule extends AbstractModule {
 
@@ -25,17 +28,19 @@ public class CommandModule extends AbstractModule {
     @Provides
     @Singleton
     public PutExecutor providePutExecutor(
-            final MemoraNode node
+            final MemoraNode node,
+            final WAL wal
     ) {
-        return new PutExecutor(node);
+        return new PutExecutor(node, wal);
     }
 
     @Provides
     @Singleton
     public DelExecutor provideDelExecutor(
-            final MemoraNode node
+            final MemoraNode node,
+            final WAL wal
     ) {
-        return new DelExecutor(node);
+        return new DelExecutor(node, wal);
     }
 
     @Provides
@@ -60,6 +65,22 @@ public class CommandModule extends AbstractModule {
         return new ClusterExecutor();
     }
 
+    @Provides
+    @Singleton
+    public WalExecutor provideWalExecutor(
+            final WAL wal
+    ) {
+        return new WalExecutor(wal);
+    }
+
+    @Provides
+    @Singleton
+    public ReplicationExecutor provideReplicationExecutor(
+            final MemoraNode node
+    ) {
+        return new ReplicationExecutor(node);
+    }
+
     @Provides
     @Singleton
     public UnknownExecutor provideUnknownExecutor() {
@@ -2,6 +2,7 @@ package com.memora.modules;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -12,8 +13,14 @@ import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.memora.constants.Constants;
+import com.memora.enums.EvictionStrategy;
+import com.memora.enums.ReplicationTransfer;
+import com.memora.enums.StorageMode;
+import com.memora.enums.Transport;
+import com.memora.enums.WalDurability;
 import com.memora.exceptions.MemoraException;
 import com.memora.model.NodeBase;
+import com.memora.model.ServerOptions;
 import com.memora.utils.ULID;
 
 import lombok.extern.slf4j.Slf4j;
@@ -86,6 +93,127 @@ public class EnvironmentModule extends AbstractModule {
         return bucketsForMemory;
     }
 
+    @Provides
+    @Named(Constants.ALLOWED_MEMORY)
+    @Singleton
+    public long getAllowedMemory() {
+        String allowedMemory = getEnv(Constants.ALLOWED_MEMORY); // In MB
+        if (!Objects.isNull(allowedMemory)) return Long.parseLong(allowedMemory) * 1024 * 1024;
+        return (long) (Runtime.getRuntime().maxMemory() * Constants.DEFAULT_ALLOWED_MEMORY_RATIO);
+    }
+
+    @Provides
+    @Named(Constants.EVICTION_POLICY)
+    @Singleton
+    public EvictionStrategy getEvictionStrategy() {
+        return EvictionStrategy.valueOf(getOrDefault(Constants.EVICTION_POLICY, Constants.DEFAULT_EVICTION_POLICY).toUpperCase());
+    }
+
+    @Provides
+    @Named(Constants.STORAGE_MODE)
+    @Singleton
+    public StorageMode getStorageMode() {
+        return StorageMode.valueOf(getOrDefault(Constants.STORAGE_MODE, Constants.DEFAULT_STORAGE_MODE).toUpperCase());
+    }
+
+    @Provides
+    @Named(Constants.OFF_HEAP_CAPACITY)
+    @Singleton
+    public long getOffHeapCapacity() {
+        String offHeapCapacity = getEnv(Constants.OFF_HEAP_CAPACITY); // In MB
+        if (!Objects.isNull(offHeapCapacity)) return Long.parseLong(offHeapCapacity) * 1024 * 1024;
+        // Direct memory is capped at the max heap size unless -XX:MaxDirectMemorySize says otherwise
+        return (long) (Runtime.getRuntime().maxMemory() * Constants.DEFAULT_OFF_HEAP_CAPACITY_RATIO);
+    }
+
+    @Provides
+    @Named(Constants.WAL_DIRECTORY)
+    @Singleton
+    public Path getWalDirectory() {
+        return Path.of(getOrDefault(Constants.WAL_DIRECTORY, Constants.DEFAULT_WAL_DIRECTORY));
+    }
+
+    @Provides
+    @Named(Constants.WAL_DURABILITY)
+    @Singleton
+    public WalDurability getWalDurability() {
+        return WalDurability.valueOf(getOrDefault(Constants.WAL_DURABILITY, Constants.DEFAULT_WAL_DURABILITY).toUpperCase());
+    }
+
+    @Provides
+    @Named(Constants.WAL_SYNC_INTERVAL)
+    @Singleton
+    public long getWalSyncInterval() {
+        return Long.parseLong(getOrDefault(Constants.WAL_SYNC_INTERVAL, Constants.DEFAULT_WAL_SYNC_INTERVAL)); // In milliseconds
+    }
+
+    @Provides
+    @Named(Constants.WAL_SEGMENT_SIZE)
+    @Singleton
+    public long getWalSegmentSize() {
+        return Long.parseLong(getOrDefault(Constants.WAL_SEGMENT_SIZE, Constants.DEFAULT_WAL_SEGMENT_SIZE)) * 1024 * 1024; // In MB
+    }
+
+    @Provides
+    @Named(Constants.WAL_MAX_SIZE)
+    @Singleton
+    public long getWalMaxSize() {
+        return Long.parseLong(getOrDefault(Constants.WAL_MAX_SIZE, Constants.DEFAULT_WAL_MAX_SIZE)) * 1024 * 1024; // In MB
+    }
+
+    @Provides
+    @Named(Constants.WAL_TAIL_SIZE)
+    @Singleton
+    public long getWalTailSize() {
+        return Long.parseLong(getOrDefault(Constants.WAL_TAIL_SIZE, Constants.DEFAULT_WAL_TAIL_SIZE)) * 1024 * 1024; // In MB
+    }
+
+    @Provides
+    @Named(Constants.REPLICATION_TRANSFER)
+    @Singleton
+    public ReplicationTransfer getReplicationTransfer() {
+        return ReplicationTransfer.valueOf(getOrDefault(Constants.REPLICATION_TRANSFER, Constants.DEFAULT_REPLICATION_TRANSFER).toUpperCase());
+    }
+
+    @Provides
+    @Named(Constants.WAL_COMPACTION_INTERVAL)
+    @Singleton
+    public long getWalCompactionInterval() {
+        return Long.parseLong(getOrDefault(Constants.WAL_COMPACTION_INTERVAL, Constants.DEFAULT_WAL_COMPACTION_INTERVAL)); // In seconds, 0 turns compaction off
+    }
+
+    @Provides
+    @Named(Constants.SNAPSHOT_DIRECTORY)
+    @Singleton
+    public Path getSnapshotDirectory() {
+        return Path.of(getOrDefault(Constants.SNAPSHOT_DIRECTORY, Constants.DEFAULT_SNAPSHOT_DIRECTORY));
+    }
+
+    @Provides
+    @Named(Constants.SNAPSHOT_INTERVAL)
+    @Singleton
+    public long getSnapshotInterval() {
+        return Long.parseLong(getOrDefault(Constants.SNAPSHOT_INTERVAL, Constants.DEFAULT_SNAPSHOT_INTERVAL)); // In seconds, 0 turns snapshots off
+    }
+
+    @Provides
+    @Singleton
+    public ServerOptions getServerOptions() {
+        int acceptors = Integer.parseInt(getOrDefault(Constants.SERVER_ACCEPTORS, Constants.DEFAULT_SERVER_ACCEPTORS));
+        return ServerOptions.builder()
+                .transport(Transport.valueOf(getOrDefault(Constants.SERVER_TRANSPORT, Constants.DEFAULT_SERVER_TRANSPORT).toUpperCase()))
+                .acceptors(acceptors > 0 ? acceptors : Runtime.getRuntime().availableProcessors())
+                .backlog(Integer.parseInt(getOrDefault(Constants.SERVER_BACKLOG, Constants.DEFAULT_SERVER_BACKLOG)))
+                .tcpNoDelay(Boolean.parseBoolean(getOrDefault(Constants.SERVER_TCP_NODELAY, Constants.DEFAULT_SERVER_TCP_NODELAY)))
+                .receiveBufferBytes(Integer.parseInt(getOrDefault(Constants.SERVER_RECEIVE_BUFFER, Constants.DEFAULT_SERVER_RECEIVE_BUFFER)) * 1024) // In KB
+                .sendBufferBytes(Integer.parseInt(getOrDefault(Constants.SERVER_SEND_BUFFER, Constants.DEFAULT_SERVER_SEND_BUFFER)) * 1024) // In KB
+                .maxInFlight(Integer.parseInt(getOrDefault(Constants.SERVER_MAX_IN_FLIGHT, Constants.DEFAULT_SERVER_MAX_IN_FLIGHT)))
+                .maxQueued(Integer.parseInt(getOrDefault(Constants.SERVER_MAX_QUEUED, Constants.DEFAULT_SERVER_MAX_QUEUED)))
+                .maxQps(Integer.parseInt(getOrDefault(Constants.SERVER_MAX_QPS, Constants.DEFAULT_SERVER_MAX_QPS)))
+                .respPort(Integer.parseInt(getOrDefault(Constants.SERVER_RESP_PORT, Constants.DEFAULT_SERVER_RESP_PORT)))
+                .build();
+    }
+
     @Provides
     @Named(Constants.REPLICATION_FACTOR)
     @Singleton
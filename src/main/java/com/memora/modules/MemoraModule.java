@@ -12,13 +12,18 @@ import com.memora.constants.Constants;
 import com.memora.core.MemoraServerChannel;
 import com.memora.core.MemoraNode;
 import com.memora.core.MemoraServer;
+import com.memora.core.RespServerChannel;
 import com.memora.model.NodeBase;
 import com.memora.model.NodeInfo;
+import com.memora.model.ServerOptions;
 import com.memora.services.BucketManager;
 import com.memora.services.ClusterOrchestrator;
-import com.memora.services.CommandExecutor;
+import com.memora.services.ExecutionStage;
+import com.memora.services.RecoveryService;
 import com.memora.services.ReplicationManager;
+import com.memora.services.SnapshotService;
 import com.memora.services.ThreadPoolService;
+import com.memora.store.WAL;
 
 public class MemoraModule extends AbstractModule {
 
@@ -38,20 +43,36 @@ public class MemoraModule extends AbstractModule {
     public MemoraNode provideMemoraNode(
         final NodeInfo nodeInfo,
         final BucketManager bucketManager,
+        final WAL wal,
+        final RecoveryService recoveryService,
+        final SnapshotService snapshotService,
+        final @Named(Constants.SNAPSHOT_INTERVAL) long snapshotInterval,
+        final @Named(Constants.WAL_COMPACTION_INTERVAL) long compactionInterval,
         final ThreadPoolService threadPoolService,
         final @Named(Constants.MY_REPLICAS) List<NodeBase> myReplicas,
         final Provider<ClusterOrchestrator> clusterOrchestratorProvider,
         final Provider<ReplicationManager> replicationManagerProvider
     ) {
-        return new MemoraNode(nodeInfo, myReplicas, threadPoolService, bucketManager, clusterOrchestratorProvider, replicationManagerProvider);
+        return new MemoraNode(nodeInfo, myReplicas, threadPoolService, bucketManager, wal, recoveryService, snapshotService, snapshotInterval, compactionInterval, clusterOrchestratorProvider, replicationManagerProvider);
     }
 
     @Provides
     @Singleton
     public MemoraServerChannel provideMemoraChannel(
-        final CommandExecutor executor
+        final ExecutionStage executionStage,
+        final WAL wal,
+        final ServerOptions serverOptions
     ){
-        return new MemoraServerChannel(executor);
+        return new MemoraServerChannel(executionStage, wal, serverOptions);
+    }
+
+    @Provides
+    @Singleton
+    public RespServerChannel provideRespChannel(
+        final ExecutionStage executionStage,
+        final ServerOptions serverOptions
+    ){
+        return new RespServerChannel(executionStage, serverOptions);
     }
 
     @Provides
@@ -60,14 +81,16 @@ public class MemoraModule extends AbstractModule {
             @Named(Constants.NODE_HOST) String host,
             @Named(Constants.NODE_PORT) int port,
             final MemoraServerChannel channel,
-            final ThreadPoolService threadPoolService
+            final RespServerChannel respChannel,
+            final ThreadPoolService threadPoolService,
+            final ServerOptions serverOptions
     ) {
-        return new MemoraServer(host, port, channel, threadPoolService);
+        return new MemoraServer(host, port, channel, respChannel, threadPoolService, serverOptions);
     }
 
     @Provides
     @Singleton
-    public MemoraDB initiateCache(final MemoraNode node, final MemoraServer server) {
-        return new MemoraDB(node, server);
+    public MemoraDB initiateCache(final MemoraNode node, final MemoraServer server, final WAL wal) {
+        return new MemoraDB(node, server, wal);
     }
 }
@@ -1,26 +1,38 @@
 package com.memora.modules;
 
+import java.nio.file.Path;
+
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.memora.constants.Constants;
+import com.memora.enums.EvictionStrategy;
+import com.memora.enums.StorageMode;
 import com.memora.enums.ThreadPool;
+import com.memora.enums.WalDurability;
 import com.memora.executors.ClusterExecutor;
 import com.memora.executors.DelExecutor;
 import com.memora.executors.GetExecutor;
 import com.memora.executors.InfoExecutor;
 import com.memora.executors.NodeExecutor;
 import com.memora.executors.PutExecutor;
+import com.memora.executors.ReplicationExecutor;
 import com.memora.executors.UnknownExecutor;
+import com.memora.executors.WalExecutor;
 import com.memora.model.ClusterMap;
 import com.memora.model.NodeInfo;
+import com.memora.model.ServerOptions;
 import com.memora.services.BucketManager;
 import com.memora.services.ClientManager;
 import com.memora.services.ClusterOrchestrator;
 import com.memora.services.CommandExecutor;
+import com.memora.services.ExecutionStage;
+import com.memora.services.RecoveryService;
 import com.memora.services.ReplicationManager;
+import com.memora.services.SnapshotService;
 import com.memora.services.ThreadPoolService;
+import com.memora.store.WAL;
 
 public class ServiceModule extends AbstractModule {
 
@@ -28,9 +40,39 @@ public class ServiceModule extends AbstractModule {
     @Singleton
     public BucketManager provideBucketManager(
             @Named(Constants.NODE_ID) String nodeId,
-            @Named(Constants.NUMBER_OF_BUCKETS) int numberOfBuckets
+            @Named(Constants.NUMBER_OF_BUCKETS) int numberOfBuckets,
+            @Named(Constants.ALLOWED_MEMORY) long allowedMemory,
+            @Named(Constants.EVICTION_POLICY) EvictionStrategy evictionStrategy,
+            @Named(Constants.STORAGE_MODE) StorageMode storageMode,
+            @Named(Constants.OFF_HEAP_CAPACITY) long offHeapCapacity
     ) {
-        return new BucketManager(nodeId, numberOfBuckets);
+        return new BucketManager(nodeId, numberOfBuckets, allowedMemory, evictionStrategy, storageMode, offHeapCapacity);
+    }
+
+    @Provides
+    @Singleton
+    public WAL provideWAL(
+            @Named(Constants.WAL_DIRECTORY) Path directory,
+            @Named(Constants.WAL_DURABILITY) WalDurability durability,
+            @Named(Constants.WAL_SYNC_INTERVAL) long syncInterval,
+            @Named(Constants.WAL_SEGMENT_SIZE) long segmentSize,
+            @Named(Constants.WAL_TAIL_SIZE) long tailSize
+    ) {
+        return new WAL(directory, durability, syncInterval, segmentSize, tailSize);
+    }
+
+    @Provides
+    @Singleton
+    public SnapshotService provideSnapshotService(@Named(Constants.SNAPSHOT_DIRECTORY) Path directory, BucketManager bucketManager, WAL wal,
+            ThreadPoolService threadPoolService) {
+        return new SnapshotService(directory, bucketManager, wal, threadPoolService);
+    }
+
+    @Provides
+    @Singleton
+    public RecoveryService provideRecoveryService(WAL wal, BucketManager bucketManager, SnapshotService snapshotService,
+            ThreadPoolService threadPoolService) {
+        return new RecoveryService(wal, bucketManager, snapshotService, threadPoolService);
     }
 
     @Provides
@@ -42,7 +84,9 @@ public class ServiceModule extends AbstractModule {
             final ClusterExecutor clusterExecutor,
             final UnknownExecutor unknownExecutor,
             final InfoExecutor infoExecutor,
-            final NodeExecutor nodeExecutor
+            final NodeExecutor nodeExecutor,
+            final WalExecutor walExecutor,
+            final ReplicationExecutor replicationExecutor
     ) {
         return new CommandExecutor(
                 putExecutor,
@@ -51,10 +95,18 @@ public class ServiceModule extends AbstractModule {
                 nodeExecutor,
                 infoExecutor,
                 clusterExecutor,
+                walExecutor,
+                replicationExecutor,
                 unknownExecutor
         );
     }
 
+    @Provides
+    @Singleton
+    public ExecutionStage provideExecutionStage(CommandExecutor commandExecutor, BucketManager bucketManager, ThreadPoolService threadPoolService, ServerOptions serverOptions) {
+        return new ExecutionStage(commandExecutor, bucketManager, threadPoolService, serverOptions);
+    }
+
     @Provides
     @Singleton
     public ClusterMap provideClusterMap() {
@@ -63,8 +115,9 @@ public class ServiceModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public ReplicationManager provideReplicationManager(NodeInfo nodeInfo, BucketManager bucketManager, ClientManager clientManager, ThreadPoolService threadPoolService, ClusterMap clusterMap) {
-        return new ReplicationManager(nodeInfo, bucketManager, clientManager, threadPoolService, clusterMap);
+    public ReplicationManager provideReplicationManager(NodeInfo nodeInfo, BucketManager bucketManager, ClientManager clientManager, ThreadPoolService threadPoolService, ClusterMap clusterMap,
+            WAL wal, @Named(Constants.WAL_MAX_SIZE) long walMaxSize, SnapshotService snapshotService) {
+        return new ReplicationManager(nodeInfo, bucketManager, clientManager, threadPoolService, clusterMap, wal, walMaxSize, snapshotService);
     }
 
 
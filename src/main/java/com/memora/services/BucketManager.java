@@ -7,11 +7,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 import com.google.inject.Inject;
+import com.memora.enums.EvictionStrategy;
+import com.memora.enums.StorageMode;
 import com.memora.model.BucketInfo;
 import com.memora.model.BucketMap;
+import com.memora.model.BucketStats;
 import com.memora.model.CacheEntry;
 import com.memora.store.Bucket;
 import com.memora.utils.Router;
@@ -23,13 +27,25 @@ public class BucketManager {
     private final Map<String, Bucket> buckets; // Contains buckets of current node
 
     private final String nodeId;
+    private final long allowedMemory; // Memory budget of the node, split evenly across its buckets
+    private final EvictionStrategy evictionStrategy;
+    private final StorageMode storageMode;
+    private final long offHeapCapacity; // Off-heap memory of the node, split evenly like the heap budget
 
     @Inject
     public BucketManager(
         String nodeId,
-        int numberOfBuckets
+        int numberOfBuckets,
+        long allowedMemory,
+        EvictionStrategy evictionStrategy,
+        StorageMode storageMode,
+        long offHeapCapacity
     ) {
         this.nodeId = nodeId;
+        this.allowedMemory = allowedMemory;
+        this.evictionStrategy = evictionStrategy;
+        this.storageMode = storageMode;
+        this.offHeapCapacity = offHeapCapacity;
         this.bucketMap = new BucketMap();
         this.buckets = new HashMap<>();
         addNewBuckets(numberOfBuckets);
@@ -43,6 +59,25 @@ public class BucketManager {
         return List.copyOf(buckets.values());
     }
 
+    public List<BucketStats> getStats() {
+        return buckets.values().stream().map(Bucket::getStats).toList();
+    }
+
+    /**
+     * Drops every entry of this node's buckets, for discarding a snapshot load that failed.
+     */
+    public void clear() {
+        getSelfBuckets().forEach(Bucket::clear);
+    }
+
+    /**
+     * Reclaims expired keys in every bucket of this node.
+     */
+    public void expire() {
+        long now = System.currentTimeMillis();
+        getSelfBuckets().forEach(bucket -> bucket.expire(now));
+    }
+
     public boolean isKeyInSelf(String key) {
         return bucketMap.isBucketInNode(nodeId, getBucketIdByKey(key).getBucketId());
     }
@@ -56,9 +91,24 @@ public class BucketManager {
         return bucket;
     }
 
+    /**
+     * The bucket at the given index of the bucket map, as a primary names it
+     * to its replicas, whose map mirrors its own.
+     */
+    public Bucket getBucket(int index) {
+        Bucket bucket = buckets.get(getBucketInfo(index).getBucketId());
+        if (Objects.isNull(bucket)) {
+            throw new IllegalStateException("Bucket not found at index: " + index);
+        }
+        return bucket;
+    }
+
     private BucketInfo getBucketIdByKey(String key) {
-        int index = Router.getBucketIndex(key, bucketMap.getNumberOfActiveBuckets());
-        return getBucketInfo(index);
+        return getBucketInfo(getBucketIndex(key));
+    }
+
+    public int getBucketIndex(String key) {
+        return Router.getBucketIndex(key, bucketMap.getNumberOfActiveBuckets());
     }
 
     private BucketInfo getBucketInfo(int index) {
@@ -67,9 +117,10 @@ public class BucketManager {
 
     private void addNewBuckets(int numberOfBuckets) {
         List<BucketInfo> bucketInfo = new ArrayList<>();
+        long maxBytes = budget() / numberOfBuckets;
         IntStream.range(0, numberOfBuckets).forEach(i -> {
             String bucketId = ULID.generate();
-            addBucket(bucketId);
+            addBucket(bucketId, maxBytes);
             bucketInfo.add(BucketInfo.builder().bucketId(bucketId).nodeId(nodeId).build());
         });
         bucketMap.addBuckets(bucketInfo);
@@ -86,6 +137,14 @@ public class BucketManager {
     }
 
     public void putAll(final Collection<CacheEntry> entries) {
+        putAll(entries, entry -> { });
+    }
+
+    /**
+     * Puts the entries bucket by bucket, handing each to the consumer once
+     * written. Every bucket is looked up before anything is written.
+     */
+    public void putAll(final Collection<CacheEntry> entries, final Consumer<CacheEntry> applied) {
         Map<Bucket, List<CacheEntry>> entriesOrderedByBuckets = new HashMap<>();
         for (CacheEntry entry : entries) {
             String key = entry.getKey();
@@ -93,7 +152,7 @@ public class BucketManager {
             entriesOrderedByBuckets.computeIfAbsent(bucket, k -> new ArrayList<>()).add(entry);
         }
         entriesOrderedByBuckets.forEach(
-            (bucket, entriesForBucket) -> bucket.putAll(entriesForBucket)
+            (bucket, entriesForBucket) -> bucket.putAll(entriesForBucket, applied)
         );
     }
 
@@ -102,17 +161,22 @@ public class BucketManager {
         bucket.delete(key);
     }
 
-    private void addBucket(String bucketId) {
-        buckets.putIfAbsent(bucketId, new Bucket(bucketId));
+    private void addBucket(String bucketId, long maxBytes) {
+        buckets.putIfAbsent(bucketId, new Bucket(bucketId, maxBytes, evictionStrategy, storageMode));
+    }
+
+    private long budget() {
+        return storageMode == StorageMode.OFF_HEAP ? offHeapCapacity : allowedMemory;
     }
 
     public void createFromPrimary(List<BucketInfo> primaryBucketInfo) {
         buckets.clear();
         bucketMap.clearBucketsOf(nodeId);
         bucketMap.addBuckets(primaryBucketInfo);
+        long maxBytes = budget() / Math.max(1, primaryBucketInfo.size());
         primaryBucketInfo.forEach(bucketInfo -> {
             String bucketId = bucketInfo.getBucketId();
-            addBucket(bucketId);
+            addBucket(bucketId, maxBytes);
         });
     }
 
@@ -11,6 +11,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import com.google.inject.Inject;
 import com.memora.core.MemoraClient;
 import com.memora.core.MemoraClientChannel;
+import com.memora.enums.ReplicationTransfer;
 import com.memora.enums.ThreadPool;
 import com.memora.messages.RpcResponse;
 import com.memora.model.NodeBase;
@@ -29,12 +30,13 @@ public class ClientManager {
     private final Bootstrap bootstrap;
     private final EventLoopGroup group;
     private final Map<String, MemoraClient> clientMap;
+    private final ReplicationTransfer replicationTransfer;
 
     private static final Map<String, CompletableFuture<RpcResponse>> PENDING_REQUESTS = new ConcurrentHashMap<>();
 
 
     @Inject
-    public ClientManager(ThreadPoolService threadPoolService) {
+    public ClientManager(ThreadPoolService threadPoolService, ReplicationTransfer replicationTransfer) {
         ThreadPool clientPool = ThreadPool.CLIENT_THREAD_POOL;
         this.group = new NioEventLoopGroup(clientPool.getSize(),
             threadPoolService.getThreadPool(clientPool));
@@ -43,6 +45,12 @@ public class ClientManager {
                       .channel(NioSocketChannel.class)
                       .handler(new MemoraClientChannel());
         clientMap = new HashMap<>();
+        this.replicationTransfer = replicationTransfer;
+    }
+
+    // How replicas ask for WAL ranges over these connections
+    public ReplicationTransfer getReplicationTransfer() {
+        return replicationTransfer;
     }
 
 
@@ -2,9 +2,13 @@ package com.memora.services;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 import com.google.inject.Inject;
 import com.memora.core.MemoraClient;
@@ -22,6 +26,7 @@ import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
 import com.memora.messages.RpcStatus;
 import com.memora.utils.Parser;
+import com.memora.utils.RequestFactory;
 import com.memora.utils.ResponseFactory;
 
 @Slf4j
@@ -176,10 +181,42 @@ public final class ClusterOrchestrator {
         }
     }
 
+    /**
+     * Sends each node the keys it owns as one batch GET, all at once, and
+     * returns their pending responses by node without waiting on any.
+     */
+    public Map<String, CompletableFuture<RpcResponse>> forwardGet(Map<String, List<String>> keysByNode) {
+        return forwardKeys(keysByNode, RequestFactory::createGetRequest);
+    }
+
+    /**
+     * Sends each node the keys it owns as one batch DELETE, all at once, and
+     * returns their pending responses by node without waiting on any.
+     */
+    public Map<String, CompletableFuture<RpcResponse>> forwardDelete(Map<String, List<String>> keysByNode) {
+        return forwardKeys(keysByNode, RequestFactory::createDeleteRequest);
+    }
+
+    private Map<String, CompletableFuture<RpcResponse>> forwardKeys(Map<String, List<String>> keysByNode,
+            Function<Collection<String>, RpcRequest.Builder> requestOf) {
+        Map<String, CompletableFuture<RpcResponse>> responses = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : keysByNode.entrySet()) {
+            String nodeId = entry.getKey();
+            MemoraClient client = clusterMap.containsNode(nodeId) ? clientManager.getClient(nodeId) : null;
+            if (client == null) {
+                responses.put(nodeId, CompletableFuture.completedFuture(ResponseFactory.builder()
+                        .setStatus(RpcStatus.BAD_REQUEST).setResponse("Node " + nodeId + " not found in cluster").build()));
+                continue;
+            }
+            responses.put(nodeId, client.callWithoutError(requestOf.apply(entry.getValue())));
+        }
+        return responses;
+    }
+
     public RpcResponse.Builder forwardToPrimary(RpcRequest request) {
         String primaryId = clusterMap.getMyPrimary(currentNode.getNodeId()).getNodeId();
         try {
-            return RpcResponse.newBuilder(clientManager.getClient(primaryId).call(request).get());
+            return RpcResponse.newBuilder(clientManager.getClient(primaryId).call(RequestFactory.createForwardedRequest(request)).get());
         } catch (MemoraException | InterruptedException | ExecutionException e) {
             log.error("Failed to forward request to primary {}: {}", primaryId, e.getMessage());
             return ResponseFactory.builder().setStatus(RpcStatus.ERROR).setResponse("Failed to forward request to primary");
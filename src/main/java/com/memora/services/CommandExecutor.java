@@ -1,5 +1,6 @@
 package com.memora.services;
 
+import java.util.List;
 import java.util.Map;
 
 import com.google.inject.Inject;
@@ -11,7 +12,9 @@ import com.memora.executors.GetExecutor;
 import com.memora.executors.InfoExecutor;
 import com.memora.executors.NodeExecutor;
 import com.memora.executors.PutExecutor;
+import com.memora.executors.ReplicationExecutor;
 import com.memora.executors.UnknownExecutor;
+import com.memora.executors.WalExecutor;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
 import com.memora.messages.RpcStatus;
@@ -32,6 +35,8 @@ public class CommandExecutor {
             final NodeExecutor nodeExecutor,
             final InfoExecutor infoExecutor,
             final ClusterExecutor clusterExecutor,
+            final WalExecutor walExecutor,
+            final ReplicationExecutor replicationExecutor,
             final UnknownExecutor unknownExecutor
     ) {
         commands = Map.of(
@@ -41,19 +46,50 @@ public class CommandExecutor {
                 Operations.NODE, nodeExecutor,
                 Operations.INFO, infoExecutor,
                 Operations.CLUSTER, clusterExecutor,
+                Operations.WAL, walExecutor,
+                Operations.REPLICATION, replicationExecutor,
                 Operations.UNKNOWN, unknownExecutor
         );
 
     }
 
+    public boolean mayBlock(RpcRequest request) {
+        return executorOf(request).mayBlock(request);
+    }
+
+    /**
+     * Groups the keys of the request by owning node if it is split between
+     * them, null otherwise, or if they could not be routed, which executing
+     * the request then reports.
+     */
+    public Map<String, List<String>> route(RpcRequest request) {
+        try {
+            return executorOf(request).route(request);
+        } catch (RuntimeException e) {
+            log.debug("Failed to route {} request {}: {}", request.getCommandCase(), request.getCorrelationId(), e.getMessage());
+            return null;
+        }
+    }
+
     public RpcResponse execute(RpcRequest request) {
+        return execute(request, route(request));
+    }
+
+    /**
+     * Executes the request with the keys grouped by {@link #route(RpcRequest)}.
+     */
+    public RpcResponse execute(RpcRequest request, Map<String, List<String>> keysByNode) {
         try {
-            log.info("Executing request: {}", request);
-            Operations operation = Executor.commandOf(request.getCommandCase());
-            return commands.get(operation).execute(request);
+            // Only what identifies the request, printing a whole batch would cost more than running it
+            log.debug("Executing {} request {}", request.getCommandCase(), request.getCorrelationId());
+            return executorOf(request).execute(request, keysByNode);
         } catch (Exception e) {
-            log.error("Error executing request: {}", request, e);
+            log.error("Error executing {} request {}", request.getCommandCase(), request.getCorrelationId(), e);
             return ResponseFactory.create(RpcStatus.ERROR, request, e.getMessage());
         }
     }
+
+    private Executor executorOf(RpcRequest request) {
+        return commands.get(Executor.commandOf(request.getCommandCase()));
+    }
 }
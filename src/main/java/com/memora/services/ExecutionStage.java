@@ -0,0 +1,155 @@
+package com.memora.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.google.inject.Inject;
+import com.memora.enums.ThreadPool;
+import com.memora.messages.KeyCommandBatch;
+import com.memora.messages.RpcRequest;
+import com.memora.messages.RpcResponse;
+import com.memora.messages.RpcStatus;
+import com.memora.model.ServerOptions;
+import com.memora.utils.QPS;
+import com.memora.utils.ResponseFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs requests off the server's event loops, which only decode them and
+ * write the responses back.
+ *
+ * Reads and writes are run on lanes, single-threaded executors picked by the
+ * bucket of their first key, so requests for the same key are executed one
+ * after the other on the same thread. Anything that may wait on another node,
+ * such as a put forwarded to the primary or split between owners, and the
+ * node, cluster, info and WAL commands go to a separate pool instead, so a
+ * slow peer never holds back a lane or a connection.
+ *
+ * Admission happens here, before anything is queued. Once a lane, or the
+ * cluster pool, has as many requests waiting as allowed, or the node has
+ * taken as many reads and writes this second as allowed, new requests are
+ * answered BUSY right away rather than waiting behind the backlog, so an
+ * overloaded node keeps answering quickly instead of letting every request's
+ * latency grow with its queues. Requests other nodes mark as theirs,
+ * replication and forwarded writes among them, are held to neither limit:
+ * shedding them would only move the backlog to a peer, or fail a write a
+ * client was already told is on its way.
+ */
+@Slf4j
+public class ExecutionStage {
+
+    private final CommandExecutor commandExecutor;
+    private final BucketManager bucketManager;
+    private final ExecutorService[] lanes;
+    private final ExecutorService clusterLane;
+    private final AtomicInteger[] queued; // Requests submitted to each lane and not yet started
+    private final AtomicInteger clusterQueued;
+    private final int maxQueued;
+    private final int maxQps;
+
+    @Inject
+    public ExecutionStage(CommandExecutor commandExecutor, BucketManager bucketManager, ThreadPoolService threadPoolService, ServerOptions options) {
+        this.commandExecutor = commandExecutor;
+        this.bucketManager = bucketManager;
+        this.lanes = threadPoolService.getLanes(ThreadPool.EXECUTION_THREAD_POOL);
+        this.clusterLane = threadPoolService.getThreadPool(ThreadPool.CLUSTER_OPERATION_THREAD_POOL);
+        this.queued = new AtomicInteger[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            queued[i] = new AtomicInteger();
+        }
+        this.clusterQueued = new AtomicInteger();
+        this.maxQueued = options.getMaxQueued();
+        this.maxQps = options.getMaxQps();
+    }
+
+    /**
+     * Executes the request on its lane and hands the response to the callback
+     * from there, or answers it BUSY at once if the node is overloaded.
+     */
+    public void submit(RpcRequest request, Consumer<RpcResponse> callback) {
+        submit(request, response -> null, callback);
+    }
+
+    /**
+     * Executes the request, then the follow-up built from its response, back
+     * to back on the request's lane so no other request for its key runs in
+     * between, and hands the last response to the callback. A null follow-up
+     * answers with the first response.
+     */
+    public void submit(RpcRequest request, Function<RpcResponse, RpcRequest> followUp, Consumer<RpcResponse> callback) {
+        // Routed once, here, the grouping is handed to the execution rather than worked out again
+        Map<String, List<String>> keysByNode = commandExecutor.route(request);
+        int lane = laneOf(request, keysByNode);
+        ExecutorService executor = lane < 0 ? clusterLane : lanes[lane];
+        AtomicInteger waiting = lane < 0 ? clusterQueued : queued[lane];
+        if (!admit(request, waiting)) {
+            log.debug("Shedding {} request {}", request.getCommandCase(), request.getCorrelationId());
+            callback.accept(ResponseFactory.create(RpcStatus.BUSY, request, "Node is busy"));
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                waiting.decrementAndGet();
+                callback.accept(execute(request, keysByNode, followUp));
+            });
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            callback.accept(ResponseFactory.create(RpcStatus.ERROR, request, "Node is shutting down"));
+        }
+    }
+
+    private RpcResponse execute(RpcRequest request, Map<String, List<String>> keysByNode, Function<RpcResponse, RpcRequest> followUp) {
+        RpcResponse response = commandExecutor.execute(request, keysByNode);
+        RpcRequest next = followUp.apply(response);
+        return next == null ? response : commandExecutor.execute(next);
+    }
+
+    // Takes a place in the lane's queue if there is one left and the node is under its throughput limit
+    private boolean admit(RpcRequest request, AtomicInteger waiting) {
+        boolean fromPeer = request.getFromPeer();
+        if (maxQps > 0 && !fromPeer && QPS.isInitialized() && QPS.getInstance().getCurrent() >= maxQps) {
+            return false;
+        }
+        if (waiting.incrementAndGet() > maxQueued && maxQueued > 0 && !fromPeer) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Index of the lane reads and writes of the key run on. Requests for keys
+     * of the same lane are executed in the order they were submitted.
+     */
+    public int laneOf(String key) {
+        return Math.floorMod(bucketManager.getBucketIndex(key), lanes.length);
+    }
+
+    // The lane's index, or -1 for the cluster pool
+    private int laneOf(RpcRequest request, Map<String, List<String>> keysByNode) {
+        String key = firstKey(request);
+        if (key == null || keysByNode != null || commandExecutor.mayBlock(request)) {
+            return -1;
+        }
+        return laneOf(key);
+    }
+
+    private static String firstKey(RpcRequest request) {
+        return switch (request.getCommandCase()) {
+            case GET_COMMAND -> firstKey(request.getGetCommand());
+            case DELETE_COMMAND -> firstKey(request.getDeleteCommand());
+            case PUT_COMMAND -> request.getPutCommand().getCommandsCount() > 0 ? request.getPutCommand().getCommands(0).getKey() : null;
+            default -> null;
+        };
+    }
+
+    private static String firstKey(KeyCommandBatch commandBatch) {
+        return commandBatch.getCommandsCount() > 0 ? commandBatch.getCommands(0).getKey() : null;
+    }
+}
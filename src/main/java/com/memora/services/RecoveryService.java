@@ -0,0 +1,161 @@
+package com.memora.services;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.google.inject.Inject;
+import com.memora.enums.ThreadPool;
+import com.memora.exceptions.MemoraException;
+import com.memora.executors.PutExecutor;
+import com.memora.messages.KeyCommand;
+import com.memora.messages.RpcRequest;
+import com.memora.model.CacheEntry;
+import com.memora.model.RecoveryStats;
+import com.memora.store.Bucket;
+import com.memora.store.WAL;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rebuilds the buckets of this node from its latest snapshot and the WAL
+ * records logged after it when it starts.
+ *
+ * Snapshot chunks are loaded concurrently. The WAL is then read by a single
+ * thread that splits each record's keys by bucket and hands them over in
+ * batches, one lane per bucket: batches of the same bucket run one after the
+ * other in WAL order, batches of different buckets run in parallel. The
+ * first batch that fails stops the replay and fails the recovery, the node
+ * must not take requests with part of its data missing.
+ */
+@Slf4j
+public class RecoveryService {
+
+    private static final int REPLAY_BATCH_SIZE = 1024;
+    private static final int MAX_BATCHES_PER_THREAD = 4; // Batches read ahead of the lanes, per recovery thread
+
+    private final WAL wal;
+    private final BucketManager bucketManager;
+    private final SnapshotService snapshotService;
+    private final ThreadPoolService threadPoolService;
+    private volatile RecoveryStats stats;
+
+    @Inject
+    public RecoveryService(WAL wal, BucketManager bucketManager, SnapshotService snapshotService, ThreadPoolService threadPoolService) {
+        this.wal = wal;
+        this.bucketManager = bucketManager;
+        this.snapshotService = snapshotService;
+        this.threadPoolService = threadPoolService;
+    }
+
+    /**
+     * Loads the snapshot, then applies every mutation logged after it straight
+     * to the buckets. Nothing is logged or replicated again, replicas resync
+     * from the primary. Throws if the snapshot or any record fails to load.
+     */
+    public void recover() {
+        long bootMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        long start = System.nanoTime();
+        long checkpoint = snapshotService.load();
+        long loaded = System.nanoTime();
+        long records = replay(checkpoint + 1);
+        long replayed = System.nanoTime();
+
+        stats = RecoveryStats.builder()
+                .bootMillis(bootMillis)
+                .snapshotLoadMillis((loaded - start) / 1_000_000)
+                .snapshotEntries(snapshotService.getLoadedEntries())
+                .walReplayMillis((replayed - loaded) / 1_000_000)
+                .walRecords(records)
+                .timeToReadyMillis(bootMillis + (replayed - start) / 1_000_000)
+                .build();
+        log.info("Ready in {} ms: boot {} ms, snapshot {} ms ({} entries), WAL replay {} ms ({} records up to version {})",
+            stats.getTimeToReadyMillis(), bootMillis, stats.getSnapshotLoadMillis(), stats.getSnapshotEntries(),
+            stats.getWalReplayMillis(), records, wal.getLastVersion());
+    }
+
+    public RecoveryStats getStats() {
+        return stats;
+    }
+
+    private long replay(long fromVersion) {
+        ExecutorService pool = threadPoolService.getThreadPool(ThreadPool.RECOVERY_THREAD_POOL);
+        Semaphore readAhead = new Semaphore(ThreadPool.RECOVERY_THREAD_POOL.getSize() * MAX_BATCHES_PER_THREAD);
+        Map<Bucket, List<Consumer<Bucket>>> pending = new HashMap<>();
+        Map<Bucket, CompletableFuture<Void>> lanes = new HashMap<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] records = new long[1];
+
+        wal.replay(fromVersion, record -> {
+            split(record, (bucket, operation) -> {
+                List<Consumer<Bucket>> batch = pending.computeIfAbsent(bucket, b -> new ArrayList<>(REPLAY_BATCH_SIZE));
+                batch.add(operation);
+                if (batch.size() == REPLAY_BATCH_SIZE) {
+                    dispatch(bucket, pending.remove(bucket), lanes, pool, readAhead, failure);
+                }
+            });
+            records[0]++;
+        });
+        pending.forEach((bucket, batch) -> dispatch(bucket, batch, lanes, pool, readAhead, failure));
+        try {
+            CompletableFuture.allOf(lanes.values().toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw new MemoraException("Failed to replay the WAL from version " + fromVersion, e.getCause());
+        }
+        return records[0];
+    }
+
+    /**
+     * Queues the batch behind the ones already queued for its bucket. Batches
+     * behind a failed one are skipped, and once any batch has failed nothing
+     * more is queued.
+     */
+    private static void dispatch(Bucket bucket, List<Consumer<Bucket>> batch, Map<Bucket, CompletableFuture<Void>> lanes,
+            ExecutorService pool, Semaphore readAhead, AtomicReference<Throwable> failure) {
+        if (failure.get() != null) {
+            throw new MemoraException("Failed to replay WAL records into bucket " + bucket.getId(), failure.get());
+        }
+        readAhead.acquireUninterruptibly();
+        CompletableFuture<Void> tail = lanes.getOrDefault(bucket, CompletableFuture.completedFuture(null));
+        CompletableFuture<Void> next = tail.thenRunAsync(() -> batch.forEach(operation -> operation.accept(bucket)), pool);
+        // Released whether the batch ran, failed or was skipped behind a failure
+        next.whenComplete((ignored, e) -> {
+            if (e != null && failure.compareAndSet(null, e)) {
+                log.error("Failed to replay WAL records into bucket {}", bucket.getId(), e);
+            }
+            readAhead.release();
+        });
+        lanes.put(bucket, next);
+    }
+
+    /**
+     * Hands each key the record touches to the consumer, with its bucket and
+     * the operation to apply to it.
+     */
+    private void split(WAL.Record record, BiConsumer<Bucket, Consumer<Bucket>> consumer) {
+        RpcRequest request = record.getRequest();
+        switch (request.getCommandCase()) {
+            case PUT_COMMAND -> {
+                for (CacheEntry entry : PutExecutor.parsePutCommand(request.getPutCommand(), record.getTimestamp()).values()) {
+                    consumer.accept(bucketManager.getBucket(entry.getKey()), bucket -> bucket.put(entry));
+                }
+            }
+            case DELETE_COMMAND -> {
+                for (KeyCommand command : request.getDeleteCommand().getCommandsList()) {
+                    String key = command.getKey();
+                    consumer.accept(bucketManager.getBucket(key), bucket -> bucket.delete(key));
+                }
+            }
+            default -> log.warn("Skipping WAL record {} with unexpected command {}", record.getVersion(), request.getCommandCase());
+        }
+    }
+}
@@ -1,80 +1,633 @@
 package com.memora.services;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
 import com.memora.core.MemoraClient;
+import com.memora.enums.ReplicationTransfer;
 import com.memora.enums.ThreadPool;
+import com.memora.executors.PutExecutor;
+import com.memora.messages.ReplicationBatch;
+import com.memora.messages.ReplicationRecord;
+import com.memora.messages.RpcRequest;
+import com.memora.messages.RpcResponse;
+import com.memora.messages.RpcStatus;
 import com.memora.model.BucketInfo;
 import com.memora.model.CacheEntry;
 import com.memora.model.ClusterMap;
 import com.memora.model.NodeInfo;
+import com.memora.model.WalStats;
 import com.memora.store.Bucket;
+import com.memora.store.WAL;
 import com.memora.utils.Parser;
+import com.memora.utils.RequestFactory;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Sends this node's mutations to its replicas and tracks, per replica, the
+ * version up to which it has acknowledged all of them. WAL segments below the
+ * lowest of these watermarks are no longer needed and get retired; a replica
+ * lagging so far behind that the WAL outgrows its cap is sent a full copy of
+ * the buckets again instead.
+ *
+ * Mutations go to each replica over a stream of its own: records naming
+ * their bucket, with raw values and absolute expiries, which the replica
+ * writes straight to that bucket. A replica whose watermark is held back by
+ * versions that failed to reach it is told to catch up, through its stream so
+ * nothing else is sent meanwhile: it pulls the versions from the hole on from
+ * this node's WAL, in large frames, and applies those past the last version
+ * it applied.
+ */
 @Slf4j
 public class ReplicationManager {
 
+    /**
+     * Versions a replica has acknowledged. Acknowledgements arrive out of
+     * order, so the watermark only moves once every version up to it is in.
+     */
+    private static final class ReplicaProgress {
+
+        private long watermark;
+        private final TreeSet<Long> acknowledged = new TreeSet<>(); // Above the watermark
+        private long stalledAt = -1; // Watermark at the previous check if later versions were in
+
+        private ReplicaProgress(long watermark) {
+            this.watermark = watermark;
+        }
+
+        /**
+         * Returns whether the watermark has been held back since the previous
+         * call by versions missing below acknowledged ones.
+         */
+        private synchronized boolean isStalled() {
+            if (acknowledged.isEmpty()) {
+                stalledAt = -1;
+                return false;
+            }
+            boolean stalled = stalledAt == watermark;
+            stalledAt = watermark;
+            return stalled;
+        }
+
+        private synchronized void acknowledgeUpTo(long version) {
+            if (version <= watermark) {
+                return;
+            }
+            watermark = version;
+            acknowledged.headSet(version, true).clear();
+            while (!acknowledged.isEmpty() && acknowledged.first() == watermark + 1) {
+                watermark = acknowledged.pollFirst();
+            }
+        }
+
+        private synchronized void acknowledge(long version) {
+            if (version <= watermark) {
+                return;
+            }
+            acknowledged.add(version);
+            while (!acknowledged.isEmpty() && acknowledged.first() == watermark + 1) {
+                watermark = acknowledged.pollFirst();
+            }
+        }
+
+        private synchronized long getWatermark() {
+            return watermark;
+        }
+    }
+
+    /**
+     * Stream of this node's mutations to one replica, over its persistent
+     * connection. Mutations are queued as they are applied and sent by a
+     * single drain task, everything queued by then in one batch, with one
+     * batch in flight at a time: the replica applies them in order, and
+     * batches grow on their own while the previous one is on the wire.
+     *
+     * Nothing is sent past a batch that failed. The replica is instead told
+     * to catch up from the batch's first version to the latest one, pulling
+     * them from this node's WAL, retried every second until it answers; only
+     * then does the stream go on, skipping whatever that covered. A batch
+     * that timed out may still land late, the replica skips records at or
+     * below the last version it applied.
+     */
+    private final class ReplicationStream {
+
+        private final NodeInfo replica;
+        private final ConcurrentLinkedQueue<Mutation> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicLong resendFrom = new AtomicLong(-1); // First version to resend from the WAL, -1 if none
+        private volatile long resentUpTo; // Queued versions up to this were resent from the WAL
+
+        private ReplicationStream(NodeInfo replica) {
+            this.replica = replica;
+        }
+
+        private void send(Mutation mutation) {
+            queue.add(mutation);
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                threadPoolService.getThreadPool(pool).execute(this::drain);
+            }
+        }
+
+        private boolean hasWork() {
+            return resendFrom.get() >= 0 || !queue.isEmpty();
+        }
+
+        private void drain() {
+            do {
+                while (hasWork()) {
+                    boolean sent = resendFrom.get() >= 0 ? resend() : sendBatch();
+                    if (!sent) {
+                        // Still draining, so nothing else is sent before the retry
+                        threadPoolService.submitAfter(pool, this::drain, RETRY_DELAY_SECONDS);
+                        return;
+                    }
+                }
+                draining.set(false);
+                // Work arriving after the last check but before the flag was cleared started no task
+            } while (hasWork() && draining.compareAndSet(false, true));
+        }
+
+        private boolean sendBatch() {
+            List<ReplicationRecord> records = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            int bytes = 0;
+            Mutation mutation;
+            while (bytes < MAX_BATCH_BYTES && (mutation = queue.poll()) != null) {
+                if (mutation.version() <= resentUpTo) {
+                    continue;
+                }
+                records.addAll(mutation.records());
+                versions.add(mutation.version());
+                bytes += mutation.bytes();
+            }
+            if (!records.isEmpty() && !isApplied(records)) {
+                resendFrom(versions.get(0));
+                log.warn("Replica {} did not apply versions {} to {}, resending them from the WAL",
+                    replica.getNodeId(), versions.get(0), versions.get(versions.size() - 1));
+                return false;
+            }
+            versions.forEach(version -> acknowledge(replica, version, true));
+            return true;
+        }
+
+        private boolean isApplied(List<ReplicationRecord> records) {
+            try {
+                return clientManager.getOrCreate(replica).replicate(records)
+                        .orTimeout(BATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .join()
+                        .getStatus() == RpcStatus.OK;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception e) {
+                log.debug("Failed to stream {} records to replica {}: {}", records.size(), replica.getNodeId(), e.getMessage());
+                return false;
+            }
+        }
+
+        private void resendFrom(long version) {
+            resendFrom.updateAndGet(current -> current < 0 ? version : Math.min(current, version));
+        }
+
+        /**
+         * Has the replica catch up from the given version before anything
+         * else is sent to it.
+         */
+        private void catchUpFrom(long version) {
+            resendFrom(version);
+            schedule();
+        }
+
+        /**
+         * Has the replica pull every version from the one to resend up to the
+         * latest, and moves its watermark there once it has.
+         */
+        private boolean resend() {
+            long fromVersion = resendFrom.get();
+            // Every mutation queued so far was logged before the latest version is read, the resend covers it
+            queue.clear();
+            long toVersion = wal.getLastVersion();
+            if (fromVersion <= toVersion) {
+                log.info("Replica {} is missing versions from {}, asking it to catch up to {}", replica.getNodeId(), fromVersion, toVersion);
+                try {
+                    if (clientManager.getOrCreate(replica).catchUp(fromVersion, toVersion)
+                            .orTimeout(CATCH_UP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .join()
+                            .getStatus() != RpcStatus.OK) {
+                        log.warn("Replica {} failed to catch up from version {}", replica.getNodeId(), fromVersion);
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch (Exception e) {
+                    log.warn("Failed to ask replica {} to catch up: {}", replica.getNodeId(), e.getMessage());
+                    return false;
+                }
+            }
+            resentUpTo = toVersion;
+            // Unless asked meanwhile to resend from an earlier version
+            resendFrom.compareAndSet(fromVersion, -1);
+            ReplicaProgress replicaProgress = progress.get(replica.getNodeId());
+            if (replicaProgress != null) {
+                replicaProgress.acknowledgeUpTo(toVersion);
+            }
+            return true;
+        }
+
+        /**
+         * Starts over after the replica was sent a full copy of the buckets
+         * holding every version up to the given one: what was left to resend
+         * is dropped, and the replica catches up on the versions logged since,
+         * replayed on top of the copy, before anything queued is sent.
+         */
+        private void restartAfter(long version) {
+            resentUpTo = Math.max(resentUpTo, version);
+            resendFrom.set(version + 1);
+            schedule();
+        }
+    }
+
+    /**
+     * The records of one logged version, sent to a replica together.
+     */
+    private record Mutation(long version, List<ReplicationRecord> records, int bytes) {
+
+        private Mutation(long version, List<ReplicationRecord> records) {
+            this(version, records, records.stream().mapToInt(ReplicationRecord::getSerializedSize).sum());
+        }
+    }
+
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+    private static final long BATCH_TIMEOUT_SECONDS = 30; // Keeps a replica that stopped answering from holding its stream
+    private static final long CATCH_UP_TIMEOUT_SECONDS = 300;
+    private static final long RETRY_DELAY_SECONDS = 1;
+
     private final NodeInfo currentNode;
     private final BucketManager bucketManager;
     private final ThreadPoolService threadPoolService;
     private final ClientManager clientManager;
     private final ClusterMap clusterMap;
     private final ArrayList<NodeInfo> inSyncReplicas;
+    private final WAL wal;
+    private final long walMaxBytes;
+    private final Map<String, ReplicaProgress> progress; // By replica node ID
+    private final Map<String, ReplicationStream> streams; // By replica node ID
+    private final LongAdder resyncs;
+    private final SnapshotService snapshotService;
+    private final ReentrantLock applyLock; // Orders what a replica applies from its primary
+    private long appliedVersion; // Highest version of the primary applied here, guarded by applyLock
 
     private final ThreadPool pool = ThreadPool.REPLICATION_THREAD_POOL;
 
     @Inject
     public ReplicationManager(NodeInfo currentNode, BucketManager bucketManager, ClientManager clientManager,
-        ThreadPoolService threadPoolService, ClusterMap clusterMap) {
+        ThreadPoolService threadPoolService, ClusterMap clusterMap, WAL wal, long walMaxBytes,
+        SnapshotService snapshotService) {
         this.currentNode = currentNode;
         this.bucketManager = bucketManager;
         this.clientManager = clientManager;
         this.threadPoolService = threadPoolService;
         this.clusterMap = clusterMap;
         this.inSyncReplicas = new ArrayList<>();
+        this.wal = wal;
+        this.walMaxBytes = walMaxBytes;
+        this.progress = new ConcurrentHashMap<>();
+        this.streams = new ConcurrentHashMap<>();
+        this.resyncs = new LongAdder();
+        this.snapshotService = snapshotService;
+        this.applyLock = new ReentrantLock();
+    }
+
+    public void put(CacheEntry entry, long version) {
+        stream(new Mutation(version, List.of(putRecord(entry, version))));
+    }
+
+    public void putAll(Collection<CacheEntry> entries, long version) {
+        List<ReplicationRecord> records = new ArrayList<>(entries.size());
+        entries.forEach(entry -> records.add(putRecord(entry, version)));
+        stream(new Mutation(version, records));
     }
 
-    public void put(CacheEntry entry) {
+    public void deleteAll(Collection<String> keys, long version) {
+        List<ReplicationRecord> records = new ArrayList<>(keys.size());
+        keys.forEach(key -> records.add(ReplicationRecord.newBuilder()
+                .setVersion(version)
+                .setBucketIndex(bucketManager.getBucketIndex(key))
+                .setKey(key)
+                .setDelete(true)
+                .build()));
+        stream(new Mutation(version, records));
+    }
+
+    private ReplicationRecord putRecord(CacheEntry entry, long version) {
+        ReplicationRecord.Builder record = ReplicationRecord.newBuilder()
+                .setVersion(version)
+                .setBucketIndex(bucketManager.getBucketIndex(entry.getKey()))
+                .setKey(entry.getKey())
+                .setValue(entry.getValue());
+        if (entry.getTtl() != -1) {
+            record.setExpireAt(entry.getTtl());
+        }
+        return record.build();
+    }
+
+    // Built once, the same records are queued on the stream of every replica
+    private void stream(Mutation mutation) {
         List<NodeInfo> replicas = clusterMap.getReplicas(currentNode.getNodeId());
-        executeAsync(replicas, replica -> {
-            try {
-                return clientManager.getOrCreate(replica)
-                        .put(entry.getKey(), entry.getValue(), entry.getTtl());
-            } catch (Exception e) {
-                return false;
+        if (replicas == null) {
+            return;
+        }
+        replicas.forEach(replica -> streamOf(replica).send(mutation));
+    }
+
+    private ReplicationStream streamOf(NodeInfo replica) {
+        return streams.computeIfAbsent(replica.getNodeId(), id -> new ReplicationStream(replica));
+    }
+
+    /**
+     * Applies a batch of the primary's replication stream, writing each
+     * record straight to the bucket it names. Records at or below the last
+     * version applied, from a batch that was resent or landed late, are
+     * skipped. Only the last write or delete of each key counts, so the
+     * batch is logged here as one put and one delete, with absolute
+     * expiries, the way a caught-up frame is.
+     */
+    public void apply(ReplicationBatch batch) {
+        applyLock.lock();
+        try {
+            Map<String, ReplicationRecord> latest = new LinkedHashMap<>();
+            for (ReplicationRecord record : batch.getRecordsList()) {
+                if (record.getVersion() > appliedVersion) {
+                    latest.put(record.getKey(), record);
+                }
             }
-        });
+            applyLatest(latest.values());
+            if (batch.getRecordsCount() > 0) {
+                appliedVersion = Math.max(appliedVersion, batch.getRecords(batch.getRecordsCount() - 1).getVersion());
+            }
+        } finally {
+            applyLock.unlock();
+        }
     }
 
-    public void putAll(Collection<CacheEntry> entries) {
-        List<NodeInfo> replicas = clusterMap.getReplicas(currentNode.getNodeId());
-        executeAsync(replicas, replica -> {
-            try {
-                return clientManager.getOrCreate(replica).put(entries, threadPoolService.getThreadPool(pool));
-            } catch (Exception e) {
-                return false;
+    // Writes the records, one per key, straight to the buckets they name
+    private void applyLatest(Collection<ReplicationRecord> latest) {
+        Map<Integer, List<CacheEntry>> entriesByBucket = new HashMap<>();
+        List<CacheEntry> entries = new ArrayList<>();
+        List<ReplicationRecord> deleted = new ArrayList<>();
+        for (ReplicationRecord record : latest) {
+            if (record.getDelete()) {
+                deleted.add(record);
+                continue;
+            }
+            CacheEntry entry = CacheEntry.builder()
+                    .key(record.getKey())
+                    .value(record.getValue())
+                    .ttl(record.getExpireAt() > 0 ? record.getExpireAt() : -1)
+                    .build();
+            entries.add(entry);
+            entriesByBucket.computeIfAbsent(record.getBucketIndex(), index -> new ArrayList<>()).add(entry);
+        }
+        if (!entries.isEmpty()) {
+            wal.apply(RequestFactory.createPutRequest(entries).build(),
+                version -> entriesByBucket.forEach((index, bucketEntries) -> bucketManager.getBucket(index).putAll(bucketEntries)));
+        }
+        if (!deleted.isEmpty()) {
+            List<String> keys = deleted.stream().map(ReplicationRecord::getKey).toList();
+            wal.apply(RequestFactory.createDeleteRequest(keys).build(),
+                version -> deleted.forEach(record -> bucketManager.getBucket(record.getBucketIndex()).delete(record.getKey())));
+        }
+    }
+
+    /**
+     * Marks a logged version that was never applied, so it has nothing to
+     * send, as acknowledged by every replica.
+     */
+    public void skip(long version) {
+        progress.values().forEach(replicaProgress -> replicaProgress.acknowledge(version));
+    }
+
+    /**
+     * Retires the WAL segments every tracked replica and the latest snapshot
+     * are past. If the WAL is still over its cap because of a replica, the
+     * one holding the oldest segments is sent the buckets afresh and stops
+     * holding the WAL back.
+     */
+    public void truncateWal() {
+        List<String> replicaIds = clusterMap.getReplicas(currentNode.getNodeId()).stream().map(NodeInfo::getNodeId).toList();
+        progress.keySet().retainAll(replicaIds);
+        streams.keySet().retainAll(replicaIds);
+
+        long lastVersion = wal.getLastVersion();
+        Map.Entry<String, Long> laggiestEntry = laggiestReplica();
+        String laggiest = laggiestEntry != null && laggiestEntry.getValue() < lastVersion ? laggiestEntry.getKey() : null;
+        long lowest = laggiest != null ? laggiestEntry.getValue() : lastVersion;
+        progress.forEach((replicaId, replicaProgress) -> {
+            NodeInfo replica = clusterMap.getAllNodes().get(replicaId);
+            if (replica != null && replicaProgress.isStalled()) {
+                streamOf(replica).catchUpFrom(replicaProgress.getWatermark() + 1);
             }
         });
+
+        long snapshotVersion = snapshotService.getVersion();
+        long bound = Math.min(lowest, snapshotVersion);
+        int retired = wal.retire(bound);
+        if (retired > 0) {
+            log.debug("Retired {} WAL segments up to version {}", retired, bound);
+        }
+
+        // Past the snapshot, dropping the replica would not free anything
+        if (laggiest == null || lowest >= snapshotVersion || wal.getSize() <= walMaxBytes) {
+            return;
+        }
+        NodeInfo replica = clusterMap.getAllNodes().get(laggiest);
+        progress.remove(laggiest);
+        if (replica == null) {
+            return;
+        }
+        log.warn("Replica {} is {} versions behind and the WAL is over {} bytes, resyncing it",
+            laggiest, lastVersion - lowest, walMaxBytes);
+        resyncs.increment();
+        try {
+            replicateDataTo(replica);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to resync replica {}", laggiest, e);
+        }
     }
 
-    public void delete(String key) {
-        List<NodeInfo> replicas = clusterMap.getReplicas(currentNode.getNodeId());
-        executeAsync(replicas, replica -> {
-            try {
-                return clientManager.getOrCreate(replica).delete(key);
-            } catch (Exception e) {
-                return false;
+    /**
+     * Compacts the closed WAL segments every tracked replica is past, so
+     * those still kept for the latest snapshot only hold the last write or
+     * delete of each key. Versions a replica may still ask for are left as
+     * they are.
+     */
+    public void compactWal() {
+        long lastVersion = wal.getLastVersion();
+        Map.Entry<String, Long> laggiest = laggiestReplica();
+        wal.compact(laggiest != null ? Math.min(laggiest.getValue(), lastVersion) : lastVersion);
+    }
+
+    // Tracked replica with the lowest watermark and that watermark, null if none is tracked
+    private Map.Entry<String, Long> laggiestReplica() {
+        Map.Entry<String, Long> laggiest = null;
+        for (Map.Entry<String, ReplicaProgress> entry : progress.entrySet()) {
+            long watermark = entry.getValue().getWatermark();
+            if (laggiest == null || watermark < laggiest.getValue()) {
+                laggiest = Map.entry(entry.getKey(), watermark);
+            }
+        }
+        return laggiest;
+    }
+
+    /**
+     * Pulls the given versions from the primary's WAL, a frame of records at
+     * a time, and logs and applies each frame here in bulk. Returns whether
+     * all of them were applied. The primary asks for a catch-up with nothing
+     * else in flight, either after a batch that failed or after a full copy
+     * of the buckets, which may have overwritten later versions: the range is
+     * replayed whole, and in order, from its first version.
+     */
+    public boolean catchUp(long fromVersion, long toVersion) {
+        NodeInfo primary = clusterMap.getMyPrimary(currentNode.getNodeId());
+        if (primary == null) {
+            return false;
+        }
+        // Replayed in order from the first version on, whatever was applied past it meanwhile
+        applyLock.lock();
+        try {
+            appliedVersion = Math.min(appliedVersion, fromVersion - 1);
+        } finally {
+            applyLock.unlock();
+        }
+        boolean zeroCopy = clientManager.getReplicationTransfer() == ReplicationTransfer.ZERO_COPY;
+        long start = System.nanoTime();
+        long next = fromVersion;
+        long bytes = 0;
+        try {
+            MemoraClient client = clientManager.getOrCreate(primary);
+            while (next <= toVersion) {
+                RpcResponse response = client.walRange(next, toVersion, zeroCopy).join();
+                if (response.getStatus() != RpcStatus.OK || response.getValue().isEmpty()) {
+                    log.warn("Primary could not serve WAL versions from {}: {}", next, response.getResponse());
+                    return false;
+                }
+                long last = applyFrame(response.getValue().asReadOnlyByteBuffer(), next, toVersion);
+                if (last < next) {
+                    log.warn("Primary sent no WAL versions from {}", next);
+                    return false;
+                }
+                bytes += response.getValue().size();
+                next = last + 1;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to catch up from version {}", next, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        log.info("Caught up on versions {} to {} ({} bytes, {}) in {} ms",
+            fromVersion, toVersion, bytes, zeroCopy ? "zero-copy" : "copied", (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Applies the records of a frame of the primary's WAL within the given
+     * versions, skipping the others a zero-copy frame may hold around them,
+     * and returns the last version read. Records at or below the last version
+     * applied here are skipped too: a batch that timed out on the primary may
+     * have landed meanwhile with newer values. Only the last write or delete
+     * of each key counts, so the frame is logged here as one put and one
+     * delete, with absolute expiries so a later replay gives the same entries.
+     */
+    private long applyFrame(ByteBuffer frame, long fromVersion, long toVersion) {
+        applyLock.lock();
+        try {
+            long last = applyRecords(frame, fromVersion, toVersion);
+            appliedVersion = Math.max(appliedVersion, last);
+            return last;
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    private long applyRecords(ByteBuffer frame, long fromVersion, long toVersion) {
+        Map<String, CacheEntry> entries = new LinkedHashMap<>();
+        Set<String> deleted = new LinkedHashSet<>();
+        long[] last = {fromVersion - 1};
+        WAL.decode(frame, record -> {
+            if (record.getVersion() < fromVersion || record.getVersion() > toVersion) {
+                return;
+            }
+            last[0] = record.getVersion();
+            if (record.getVersion() <= appliedVersion) {
+                return;
+            }
+            RpcRequest request = record.getRequest();
+            switch (request.getCommandCase()) {
+                case PUT_COMMAND -> PutExecutor.parsePutCommand(request.getPutCommand(), record.getTimestamp()).forEach((key, entry) -> {
+                    deleted.remove(key);
+                    entries.put(key, entry);
+                });
+                case DELETE_COMMAND -> request.getDeleteCommand().getCommandsList().forEach(command -> {
+                    entries.remove(command.getKey());
+                    deleted.add(command.getKey());
+                });
+                default -> log.warn("Skipping WAL record {} with unexpected command {}", record.getVersion(), request.getCommandCase());
             }
         });
+        if (!entries.isEmpty()) {
+            wal.apply(RequestFactory.createPutRequest(entries.values()).build(), version -> bucketManager.putAll(entries.values()));
+        }
+        if (!deleted.isEmpty()) {
+            wal.apply(RequestFactory.createDeleteRequest(deleted).build(), version -> deleted.forEach(bucketManager::delete));
+        }
+        return last[0];
+    }
+
+    public WalStats getWalStats() {
+        long lastVersion = wal.getLastVersion();
+        Map<String, Long> replicaLag = new HashMap<>();
+        progress.forEach((replicaId, replicaProgress) -> replicaLag.put(replicaId, lastVersion - replicaProgress.getWatermark()));
+        return WalStats.builder()
+                .sizeBytes(wal.getSize())
+                .maxBytes(walMaxBytes)
+                .segments(wal.getSegmentCount())
+                .oldestVersion(wal.getFirstVersion())
+                .lastVersion(lastVersion)
+                .tailOldestVersion(wal.getTailFirstVersion())
+                .replicaLag(replicaLag)
+                .resyncs(resyncs.sum())
+                .compaction(wal.getCompactionStats())
+                .build();
     }
 
     public void replicateDataTo(NodeInfo replica) throws IOException, InterruptedException {
@@ -82,6 +635,8 @@ public class ReplicationManager {
         final MemoraClient client = clientManager.getOrCreate(replica);
 
         List<Bucket> buckets = bucketManager.getSelfBuckets();
+        // Every version up to this one is in the buckets before the first is copied
+        long version = wal.checkpoint();
 
         executeAsync(buckets, bucket -> {
             log.info("Replicating bucket {}", bucket.getId());
@@ -89,6 +644,9 @@ public class ReplicationManager {
         }).thenAccept(success -> {
             if (success) {
                 clusterMap.addReplica(currentNode.getNodeId(), replica);
+                // Versions logged while copying may have missed buckets already copied, they are resent from the WAL
+                progress.put(replica.getNodeId(), new ReplicaProgress(version));
+                streamOf(replica).restartAfter(version);
             }
         })
         .exceptionally(ex -> {
@@ -97,6 +655,14 @@ public class ReplicationManager {
         });
     }
 
+    private boolean acknowledge(NodeInfo replica, long version, boolean success) {
+        ReplicaProgress replicaProgress = progress.get(replica.getNodeId());
+        if (success && replicaProgress != null) {
+            replicaProgress.acknowledge(version);
+        }
+        return success;
+    }
+
     private <T> CompletableFuture<Boolean> executeAsync(List<T> data, Function<T, Boolean> task) {
         if (data == null || data.isEmpty()) {
             log.warn("No data provided for replication operation '{}', completing as success.");
@@ -134,6 +700,13 @@ public class ReplicationManager {
 
     public void initiateReplicationOf(NodeInfo primary) throws InterruptedException, IOException {
         MemoraClient client = clientManager.getOrCreate(primary);
+        // Versions are the new primary's own from here on
+        applyLock.lock();
+        try {
+            appliedVersion = 0;
+        } finally {
+            applyLock.unlock();
+        }
 
         client.call("INFO BUCKET MAP").thenAcceptAsync(response -> {
             List<BucketInfo> bucketInfo = Parser.fromJson(response.getResponse(), new TypeToken<List<BucketInfo>>() {
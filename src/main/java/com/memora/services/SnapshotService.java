@@ -0,0 +1,235 @@
+package com.memora.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.google.inject.Inject;
+import com.memora.enums.ThreadPool;
+import com.memora.exceptions.MemoraException;
+import com.memora.model.CacheEntry;
+import com.memora.model.SnapshotStats;
+import com.memora.store.Bucket;
+import com.memora.store.Snapshot;
+import com.memora.store.WAL;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes the buckets of this node to disk in the background and loads them
+ * back on boot.
+ *
+ * A snapshot is a directory named after the WAL checkpoint it was started at,
+ * holding one chunk per bucket. Buckets are read while writers carry on, so
+ * a key may be captured with a write made after the checkpoint; replaying the
+ * WAL from the checkpoint on top of the snapshot brings every key back to its
+ * latest value. A snapshot is written under a temporary name and renamed once
+ * complete, older ones are deleted after that.
+ */
+@Slf4j
+public class SnapshotService {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String CHUNK_SUFFIX = ".chunk";
+    private static final int LOAD_BATCH_SIZE = 1024;
+
+    private final Path directory;
+    private final BucketManager bucketManager;
+    private final WAL wal;
+    private final ThreadPoolService threadPoolService;
+    private final AtomicBoolean running;
+    private volatile long version; // Of the latest complete snapshot, 0 if none
+    private volatile SnapshotStats stats;
+    private volatile long loadedEntries;
+
+    @Inject
+    public SnapshotService(Path directory, BucketManager bucketManager, WAL wal, ThreadPoolService threadPoolService) {
+        this.directory = directory;
+        this.bucketManager = bucketManager;
+        this.wal = wal;
+        this.threadPoolService = threadPoolService;
+        this.running = new AtomicBoolean();
+    }
+
+    /**
+     * Writes every bucket of this node to a new snapshot, unless one is
+     * already being written or nothing was logged since the last one.
+     */
+    public void take() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Snapshot already in progress, skipping");
+            return;
+        }
+        Path temporary = null;
+        try {
+            long start = System.nanoTime();
+            long checkpoint = wal.checkpoint();
+            if (checkpoint == version) {
+                return;
+            }
+            temporary = directory.resolve(name(checkpoint) + TEMPORARY_SUFFIX);
+            Files.createDirectories(temporary);
+
+            List<Bucket> buckets = bucketManager.getSelfBuckets();
+            long entries = 0;
+            for (Bucket bucket : buckets) {
+                entries += Snapshot.write(temporary.resolve(bucket.getId() + CHUNK_SUFFIX), checkpoint, bucket::snapshot);
+            }
+            long size = size(temporary);
+            Files.move(temporary, directory.resolve(name(checkpoint)), StandardCopyOption.ATOMIC_MOVE);
+            version = checkpoint;
+            deleteOlderThan(checkpoint);
+
+            long durationMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            stats = SnapshotStats.builder()
+                    .version(checkpoint)
+                    .takenAt(System.currentTimeMillis())
+                    .buckets(buckets.size())
+                    .entries(entries)
+                    .sizeBytes(size)
+                    .durationMillis(durationMillis)
+                    .bytesPerSecond(size * 1000 / durationMillis)
+                    .build();
+            log.info("Snapshot at version {} written: {} entries, {} bytes in {} ms ({} bytes/s)",
+                checkpoint, entries, size, durationMillis, stats.getBytesPerSecond());
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write snapshot", e);
+            if (temporary != null) {
+                delete(temporary);
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Loads the latest complete snapshot into the buckets, all chunks at once
+     * on the recovery pool, and returns the version to replay the WAL after,
+     * 0 if there is none. A snapshot that fails to load is never kept in
+     * part: the buckets are cleared, and the whole WAL is replayed instead if
+     * it still starts at the first version. Otherwise the versions the
+     * snapshot held are lost, and loading fails.
+     */
+    public long load() {
+        Path latest = latest();
+        if (latest == null) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long checkpoint = Long.parseLong(latest.getFileName().toString().substring(SNAPSHOT_PREFIX.length()));
+        LongAdder entries = new LongAdder();
+        try (Stream<Path> listing = Files.list(latest)) {
+            ExecutorService pool = threadPoolService.getThreadPool(ThreadPool.RECOVERY_THREAD_POOL);
+            CompletableFuture<?>[] loads = listing
+                    .filter(path -> path.toString().endsWith(CHUNK_SUFFIX))
+                    .map(chunk -> CompletableFuture.runAsync(() -> loadChunk(chunk, entries), pool))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(loads).join();
+        } catch (IOException | RuntimeException e) {
+            // Every chunk load has ended by now, none writes to the buckets any more
+            bucketManager.clear();
+            if (wal.getFirstVersion() > 1) {
+                throw new MemoraException("Failed to load snapshot " + latest + " and the WAL no longer holds the versions before it", e);
+            }
+            log.error("Failed to load snapshot {}, discarding the {} entries read and replaying the whole WAL", latest, entries.sum(), e);
+            return 0;
+        }
+        loadedEntries = entries.sum();
+        version = checkpoint;
+        log.info("Loaded {} entries from snapshot at version {} in {} ms",
+            loadedEntries, checkpoint, (System.nanoTime() - start) / 1_000_000);
+        return checkpoint;
+    }
+
+    public long getLoadedEntries() {
+        return loadedEntries;
+    }
+
+    // The WAL is not needed up to this version to restore the buckets
+    public long getVersion() {
+        return version;
+    }
+
+    public SnapshotStats getStats() {
+        return stats;
+    }
+
+    private void loadChunk(Path chunk, LongAdder entries) {
+        List<CacheEntry> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+        try {
+            Snapshot.read(chunk, entry -> {
+                batch.add(entry);
+                if (batch.size() == LOAD_BATCH_SIZE) {
+                    bucketManager.putAll(batch);
+                    entries.add(batch.size());
+                    batch.clear();
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bucketManager.putAll(batch);
+        entries.add(batch.size());
+    }
+
+    private Path latest() {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing
+                    .filter(path -> path.getFileName().toString().startsWith(SNAPSHOT_PREFIX))
+                    .filter(path -> !path.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+                    .max(Comparator.comparing(path -> path.getFileName().toString()))
+                    .orElse(null);
+        } catch (IOException e) {
+            log.error("Failed to list snapshots in {}", directory, e);
+            return null;
+        }
+    }
+
+    private void deleteOlderThan(long checkpoint) throws IOException {
+        String current = name(checkpoint);
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.filter(path -> path.getFileName().toString().startsWith(SNAPSHOT_PREFIX))
+                    .filter(path -> path.getFileName().toString().compareTo(current) < 0
+                        || path.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+                    .forEach(this::delete);
+        }
+    }
+
+    private void delete(Path snapshot) {
+        try (Stream<Path> files = Files.walk(snapshot)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.error("Failed to delete snapshot {}", snapshot, e);
+        }
+    }
+
+    private static long size(Path snapshot) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(snapshot)) {
+            for (Path file : files.toList()) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    private static String name(long checkpoint) {
+        return String.format("%s%020d", SNAPSHOT_PREFIX, checkpoint);
+    }
+}
@@ -74,19 +74,44 @@ public class ThreadPoolService {
     }
 
     public void submitEvery(ThreadPool pool, Runnable task, long recurringSeconds) {
+        submitEvery(pool, task, recurringSeconds, TimeUnit.SECONDS);
+    }
+
+    public void submitEvery(ThreadPool pool, Runnable task, long period, TimeUnit unit) {
         ExecutorService threadPool = threadPoolMap.get(pool.getThreadName());
         if (threadPool == null) {
             throw new IllegalStateException("Thread pool not found: " + pool.name());
         }
 
         scheduler.scheduleAtFixedRate(() ->
-            threadPool.submit(task), recurringSeconds, recurringSeconds, TimeUnit.SECONDS);
+            threadPool.submit(task), period, period, unit);
     }
 
     public ExecutorService getThreadPool(ThreadPool pool) {
         return threadPoolMap.computeIfAbsent(pool.getThreadName(), k -> createNewThreadPool(pool));
     }
 
+    /**
+     * Splits the pool into single-threaded executors, one per thread, for
+     * tasks that must run one after the other once given the same lane.
+     */
+    public ExecutorService[] getLanes(ThreadPool pool) {
+        ExecutorService[] lanes = new ExecutorService[pool.getSize()];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = pool.getThreadName() + "-" + i;
+            lanes[i] = threadPoolMap.computeIfAbsent(name, k -> {
+                log.info("Creating lane {} of thread pool {}", k, pool.getThreadName());
+                ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                        .setDaemon(pool.isDaemon())
+                        .setPriority(pool.getPriority())
+                        .setNameFormat("memora-" + k)
+                        .build();
+                return Executors.newSingleThreadExecutor(threadFactory);
+            });
+        }
+        return lanes;
+    }
+
     public void shutdown() {
         for (ExecutorService threadPool : threadPoolMap.values()) {
             threadPool.shutdown();
@@ -1,33 +1,83 @@
 package com.memora.store;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+import com.memora.enums.EvictionStrategy;
+import com.memora.enums.StorageMode;
+import com.memora.exceptions.MemoraException;
+import com.memora.model.BucketStats;
 import com.memora.model.CacheEntry;
-import com.memora.utils.InsertionOrderMap;
+import com.memora.store.eviction.EvictionPolicy;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import com.memora.core.MemoraClient;
 
 /**
- * Simple thread-safe in-memory key-value store.
+ * Simple thread-safe in-memory key-value store, bounded by a memory budget.
+ * Keys with a TTL are reclaimed in the background by {@link #expire(long)}.
+ *
+ * Entries live either as objects on the heap or, in {@link StorageMode#OFF_HEAP},
+ * as records in off-heap slabs where the budget is the slab capacity.
  */
 @Slf4j
 public class Bucket {
 
+    // Upper bound on victims tried in one pass, in case the policy keeps naming keys already gone
+    private static final int MAX_EVICTION_ATTEMPTS = 1024;
+    // Granularity of the expiry wheel, also the period at which expire() is expected to run
+    public static final long EXPIRY_TICK_MILLIS = 250;
+    // Expired keys reclaimed per expire() call, the rest wait for the next tick
+    private static final int MAX_EXPIRATIONS_PER_TICK = 10_000;
+    // Share of the off-heap capacity the budget allows, the rest absorbs writes racing the evictor and slab fragmentation
+    private static final double OFF_HEAP_FILL_RATIO = 0.9;
+
     private final String bucketId;
-    private final ConcurrentHashMap<String, CacheEntry> store;
-    private final InsertionOrderMap<String> insertionOrder;
+    private final long maxBytes;
+    private final EntryStore store;
+    private final EvictionPolicy evictionPolicy;
+    private final ReentrantLock evictionLock;
+    private final AtomicLong usedBytes;
+    private final LongAdder evictions;
+    private final LongAdder mutations; // Writes and deletes that changed this bucket, for stats
+
+    private final TimingWheel expiryWheel;
+    private final ArrayDeque<TimingWheel.Timer> expiryBacklog; // Due timers not yet reclaimed
+    private final ReentrantLock expiryLock; // Held only by the expiry task, never by readers or writers
+    private final LongAdder expiredKeys;
+    private final LongAdder reclaimedBytes;
+
+    public Bucket(String bucketId, long maxBytes, EvictionStrategy evictionStrategy) {
+        this(bucketId, maxBytes, evictionStrategy, StorageMode.HEAP);
+    }
 
-    public Bucket(String bucketId) {
+    public Bucket(String bucketId, long maxBytes, EvictionStrategy evictionStrategy, StorageMode storageMode) {
         this.bucketId = bucketId;
-        // Set initial capacity and load factor to prevent rehashes
-        this.store = new ConcurrentHashMap<>(1000, 0.8f);
-        this.insertionOrder = new InsertionOrderMap<>();
+        if (storageMode == StorageMode.OFF_HEAP) {
+            this.maxBytes = (long) (maxBytes * OFF_HEAP_FILL_RATIO);
+            this.store = new OffHeapEntryStore(maxBytes);
+        } else {
+            this.maxBytes = maxBytes;
+            this.store = new HeapEntryStore();
+        }
+        this.evictionPolicy = EvictionPolicy.create(evictionStrategy, this.maxBytes);
+        this.evictionLock = new ReentrantLock();
+        this.usedBytes = new AtomicLong();
+        this.evictions = new LongAdder();
+        this.mutations = new LongAdder();
+        this.expiryWheel = new TimingWheel(EXPIRY_TICK_MILLIS, System.currentTimeMillis());
+        this.expiryBacklog = new ArrayDeque<>();
+        this.expiryLock = new ReentrantLock();
+        this.expiredKeys = new LongAdder();
+        this.reclaimedBytes = new LongAdder();
     }
 
     public String getId() {
@@ -35,44 +85,175 @@ public class Bucket {
     }
 
     public void put(final CacheEntry entry) {
-        if (entry.getTtl() != -1 && System.currentTimeMillis() > entry.getTtl()) {
+        if (isExpired(entry.getTtl(), System.currentTimeMillis())) {
             return;
         }
 
-        store.compute(entry.getKey(), (k, v) -> {
-            insertionOrder.put(entry.getKey());
-            return entry;
-        });
+        String key = entry.getKey();
+        EntryStore.WriteListener listener = (weight, previousWeight) -> {
+            usedBytes.addAndGet(weight - previousWeight);
+            evictionPolicy.onWrite(key, weight);
+        };
+        for (int attempts = 0; !store.put(entry, listener); attempts++) {
+            // No free chunk of the entry's size, evict until one frees up
+            if (attempts == MAX_EVICTION_ATTEMPTS || !evictOne()) {
+                throw new MemoraException("No room left in bucket " + bucketId + " for key " + key);
+            }
+        }
+        mutations.increment();
+        if (entry.getTtl() != -1) {
+            expiryWheel.schedule(entry.getKey(), entry.getTtl());
+        }
+        evictIfNeeded();
     }
 
     public void putAll(final List<CacheEntry> entries) {
         entries.forEach(this::put);
     }
 
+    /**
+     * Puts the entries one after the other, handing each to the consumer once
+     * written, so a failure halfway through tells which ones were.
+     */
+    public void putAll(final List<CacheEntry> entries, final Consumer<CacheEntry> applied) {
+        for (CacheEntry entry : entries) {
+            put(entry);
+            applied.accept(entry);
+        }
+    }
+
+    /**
+     * Plain lock-free lookup. Only an entry found expired takes the key's lock,
+     * to remove it unless a writer has replaced it with a live one meanwhile.
+     */
     public CacheEntry get(String key) {
-        return store.compute(key, (k, v) -> {
-            if (v != null && v.getTtl() != -1 && System.currentTimeMillis() > v.getTtl()) {
-                // Lazy eviction for expired keys
-                insertionOrder.remove(key);
-                return null;
-            }
-            return v;
-        });
+        CacheEntry entry = store.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (isExpired(entry.getTtl(), now)) {
+            // Lazy eviction for expired keys
+            store.remove(key, ttl -> isExpired(ttl, now), weight -> reclaim(key, weight));
+            return null;
+        }
+        evictionPolicy.onAccess(key);
+        return entry;
     }
 
     public void delete(String key) {
-        store.remove(key);
-        insertionOrder.remove(key);
+        if (store.remove(key, ttl -> true, weight -> release(key, weight))) {
+            mutations.increment();
+        }
+    }
+
+    /**
+     * Drops every entry, for discarding a load that did not complete.
+     */
+    public void clear() {
+        List<String> keys = new ArrayList<>(store.size());
+        store.forEach(entry -> keys.add(entry.getKey()));
+        keys.forEach(key -> store.remove(key, ttl -> true, weight -> release(key, weight)));
     }
 
     public boolean stream(final MemoraClient client, final ExecutorService executor) {
         return client.put(store.values(), executor);
     }
 
-    private void evict() {
-        String keyToEvict = insertionOrder.getMostRecentKey();
-        if (keyToEvict != null) {
-            store.remove(keyToEvict);
+    /**
+     * Hands the bucket's live entries to the consumer while writers carry on,
+     * for writing a snapshot.
+     */
+    public void snapshot(Consumer<CacheEntry> consumer) {
+        long now = System.currentTimeMillis();
+        store.forEach(entry -> {
+            if (!isExpired(entry.getTtl(), now)) {
+                consumer.accept(entry);
+            }
+        });
+    }
+
+    /**
+     * Advances the expiry wheel to now and reclaims keys whose TTL has passed,
+     * at most MAX_EXPIRATIONS_PER_TICK of them per call. Each key is removed
+     * under its own lock only, and re-checked there since it may have
+     * been overwritten with a new TTL after its timer was scheduled.
+     */
+    public void expire(long now) {
+        if (!expiryLock.tryLock()) {
+            return;
+        }
+        try {
+            expiryWheel.advance(now, expiryBacklog::add);
+            for (int i = 0; i < MAX_EXPIRATIONS_PER_TICK && !expiryBacklog.isEmpty(); i++) {
+                String key = expiryBacklog.poll().getKey();
+                store.remove(key, ttl -> isExpired(ttl, now), weight -> reclaim(key, weight));
+            }
+        } finally {
+            expiryLock.unlock();
+        }
+    }
+
+    public BucketStats getStats() {
+        return BucketStats.builder()
+                .bucketId(bucketId)
+                .mutations(mutations.sum())
+                .keys(store.size())
+                .usedBytes(usedBytes.get())
+                .maxBytes(maxBytes)
+                .evictions(evictions.sum())
+                .expiredKeys(expiredKeys.sum())
+                .reclaimedBytes(reclaimedBytes.sum())
+                .slabs(store.getSlabStats())
+                .build();
+    }
+
+    /**
+     * Drops keys chosen by the eviction policy until the bucket is back under
+     * its budget. Only one writer evicts at a time, the others carry on.
+     */
+    private void evictIfNeeded() {
+        if (usedBytes.get() <= maxBytes || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            for (int attempts = 0; usedBytes.get() > maxBytes && attempts < MAX_EVICTION_ATTEMPTS; attempts++) {
+                if (!evictOne()) {
+                    break;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the key the eviction policy picks, returns false if it has none.
+     */
+    private boolean evictOne() {
+        String victim = evictionPolicy.selectVictim();
+        if (victim == null) {
+            return false;
         }
+        store.remove(victim, ttl -> true, weight -> {
+            release(victim, weight);
+            evictions.increment();
+        });
+        return true;
+    }
+
+    private static boolean isExpired(long ttl, long now) {
+        return ttl != -1 && now > ttl;
+    }
+
+    private void reclaim(String key, long weight) {
+        release(key, weight);
+        expiredKeys.increment();
+        reclaimedBytes.add(weight);
+    }
+
+    private void release(String key, long weight) {
+        usedBytes.addAndGet(-weight);
+        evictionPolicy.onRemove(key);
     }
 }
@@ -0,0 +1,57 @@
+package com.memora.store;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+import com.memora.model.CacheEntry;
+import com.memora.model.SlabStats;
+
+/**
+ * Key to entry map backing a {@link Bucket}.
+ *
+ * Mutations of a key are serialized and their callbacks run while the key is
+ * locked, so the bucket's memory accounting and eviction policy see the
+ * writes of a key in the order they were applied. Reads never block.
+ */
+interface EntryStore {
+
+    @FunctionalInterface
+    interface WriteListener {
+        /**
+         * Called with the weight of the new entry and of the one it replaced, 0 if none.
+         */
+        void onWrite(long weight, long previousWeight);
+    }
+
+    CacheEntry get(String key);
+
+    /**
+     * Inserts or overwrites the entry. Returns false, leaving the store as it
+     * was, when there is no room for it.
+     */
+    boolean put(CacheEntry entry, WriteListener listener);
+
+    /**
+     * Removes the key if the condition accepts its expiry timestamp, handing
+     * the weight of the removed entry to the listener.
+     */
+    boolean remove(String key, LongPredicate ttlCondition, LongConsumer listener);
+
+    int size();
+
+    Collection<CacheEntry> values();
+
+    /**
+     * Hands every entry to the consumer without collecting them first, for
+     * writing a bucket out. Writers are held back at most for as long as it
+     * takes to capture a part of the store, not while the consumer runs.
+     */
+    void forEach(Consumer<CacheEntry> consumer);
+
+    /**
+     * Slab usage of off-heap stores, null for stores that live on the heap.
+     */
+    SlabStats getSlabStats();
+}
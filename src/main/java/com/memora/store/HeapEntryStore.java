@@ -0,0 +1,378 @@
+package com.memora.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+import com.google.protobuf.UnsafeByteOperations;
+import com.memora.model.CacheEntry;
+import com.memora.model.SlabStats;
+
+/**
+ * Keeps entries on the heap in open-addressing tables instead of as objects.
+ *
+ * Keys are spread over segments, each a Robin Hood hash table made of three
+ * parallel arrays: the key's hash, its record and its expiry timestamp. A
+ * record is one byte array holding [key length: int][key][value], so an entry
+ * costs a slot in each array and a single object, against a map node, an
+ * entry, a String and a ByteString with their arrays before.
+ *
+ * Writers take their segment's write lock. Readers probe under an optimistic
+ * read of the segment and retry under the read lock if a writer got in the
+ * way. Records are never modified once stored, so values are handed out as
+ * views of them without copying.
+ */
+class HeapEntryStore implements EntryStore {
+
+    // Slot arrays at 0.8 load, plus the record's array header and key length
+    private static final long ENTRY_OVERHEAD = 44;
+    private static final int KEY_LENGTH_SIZE = 4;
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.8f;
+    private static final int NOT_FOUND = -1;
+
+    private static final class Table {
+
+        private final int[] hashes; // 0 marks an empty slot
+        private final byte[][] records;
+        private final long[] ttls;
+        private final int mask;
+
+        private Table(int capacity) {
+            this(new int[capacity], new byte[capacity][], new long[capacity]);
+        }
+
+        private Table(int[] hashes, byte[][] records, long[] ttls) {
+            this.hashes = hashes;
+            this.records = records;
+            this.ttls = ttls;
+            this.mask = hashes.length - 1;
+        }
+
+        private Table copy() {
+            return new Table(hashes.clone(), records.clone(), ttls.clone());
+        }
+    }
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+        private int size;
+    }
+
+    private final Segment[] segments;
+
+    HeapEntryStore() {
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        int hash = hash(key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        Segment segment = segmentOf(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            CacheEntry entry = read(segment.table, hash, key, keyBytes);
+            if (segment.lock.validate(stamp)) {
+                return entry;
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return read(segment.table, hash, key, keyBytes);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean put(CacheEntry entry, WriteListener listener) {
+        int hash = hash(entry.getKey());
+        byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[KEY_LENGTH_SIZE + keyBytes.length + entry.getValue().size()];
+        writeKeyLength(record, keyBytes.length);
+        System.arraycopy(keyBytes, 0, record, KEY_LENGTH_SIZE, keyBytes.length);
+        entry.getValue().copyTo(record, KEY_LENGTH_SIZE + keyBytes.length);
+
+        Segment segment = segmentOf(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int index = find(table, hash, keyBytes);
+            if (index != NOT_FOUND) {
+                long previousWeight = weigh(table.records[index]);
+                table.records[index] = record;
+                table.ttls[index] = entry.getTtl();
+                listener.onWrite(weigh(record), previousWeight);
+                return true;
+            }
+            if (segment.size + 1 > table.hashes.length * LOAD_FACTOR) {
+                table = resize(segment);
+            }
+            insert(table, hash, record, entry.getTtl());
+            segment.size++;
+            listener.onWrite(weigh(record), 0);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(String key, LongPredicate ttlCondition, LongConsumer listener) {
+        int hash = hash(key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        Segment segment = segmentOf(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int index = find(table, hash, keyBytes);
+            if (index == NOT_FOUND || !ttlCondition.test(table.ttls[index])) {
+                return false;
+            }
+            listener.accept(weigh(table.records[index]));
+            delete(table, index);
+            segment.size--;
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copies every entry out of the tables, meant for streaming a bucket out.
+     */
+    @Override
+    public Collection<CacheEntry> values() {
+        List<CacheEntry> entries = new ArrayList<>();
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Table table = segment.table;
+                for (int i = 0; i < table.hashes.length; i++) {
+                    if (table.hashes[i] != 0) {
+                        byte[] record = table.records[i];
+                        int keyLength = readKeyLength(record);
+                        String key = new String(record, KEY_LENGTH_SIZE, keyLength, StandardCharsets.UTF_8);
+                        entries.add(toEntry(key, record, keyLength, table.ttls[i]));
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Copies one segment's slot arrays at a time, under an optimistic read
+     * when no writer gets in the way, and reads the entries from the copy.
+     * Records are immutable so the copy stays a consistent image of the
+     * segment while writers carry on.
+     */
+    @Override
+    public void forEach(Consumer<CacheEntry> consumer) {
+        for (Segment segment : segments) {
+            Table table = capture(segment);
+            for (int i = 0; i < table.hashes.length; i++) {
+                if (table.hashes[i] != 0) {
+                    byte[] record = table.records[i];
+                    int keyLength = readKeyLength(record);
+                    String key = new String(record, KEY_LENGTH_SIZE, keyLength, StandardCharsets.UTF_8);
+                    consumer.accept(toEntry(key, record, keyLength, table.ttls[i]));
+                }
+            }
+        }
+    }
+
+    @Override
+    public SlabStats getSlabStats() {
+        return null;
+    }
+
+    /**
+     * Looks the key up without locking. The result is only meaningful if the
+     * segment was not written meanwhile, but the lookup never fails or loops
+     * on a table being modified under it.
+     */
+    private static CacheEntry read(Table table, int hash, String key, byte[] keyBytes) {
+        int index = find(table, hash, keyBytes);
+        if (index == NOT_FOUND) {
+            return null;
+        }
+        byte[] record = table.records[index];
+        long ttl = table.ttls[index];
+        if (record == null) {
+            return null;
+        }
+        return toEntry(key, record, readKeyLength(record), ttl);
+    }
+
+    private static Table capture(Segment segment) {
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table copy = segment.table.copy();
+            if (segment.lock.validate(stamp)) {
+                return copy;
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return segment.table.copy();
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    private static CacheEntry toEntry(String key, byte[] record, int keyLength, long ttl) {
+        int valueOffset = KEY_LENGTH_SIZE + keyLength;
+        return CacheEntry.builder()
+                .key(key)
+                .value(UnsafeByteOperations.unsafeWrap(record, valueOffset, record.length - valueOffset))
+                .ttl(ttl)
+                .build();
+    }
+
+    /**
+     * Probes from the key's home slot until it is found, or until a slot is
+     * empty or holds a key closer to its own home than the key would be.
+     */
+    private static int find(Table table, int hash, byte[] keyBytes) {
+        int mask = table.mask;
+        int index = hash & mask;
+        for (int distance = 0; distance <= mask; distance++) {
+            int slotHash = table.hashes[index];
+            if (slotHash == 0 || ((index - (slotHash & mask)) & mask) < distance) {
+                return NOT_FOUND;
+            }
+            if (slotHash == hash && keyEquals(table.records[index], keyBytes)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Places a key known to be absent, taking the slot of any key that sits
+     * closer to its home and carrying that one further along instead.
+     */
+    private static void insert(Table table, int hash, byte[] record, long ttl) {
+        int mask = table.mask;
+        int index = hash & mask;
+        int distance = 0;
+        while (table.hashes[index] != 0) {
+            int slotDistance = (index - (table.hashes[index] & mask)) & mask;
+            if (slotDistance < distance) {
+                int displacedHash = table.hashes[index];
+                byte[] displacedRecord = table.records[index];
+                long displacedTtl = table.ttls[index];
+                table.hashes[index] = hash;
+                table.records[index] = record;
+                table.ttls[index] = ttl;
+                hash = displacedHash;
+                record = displacedRecord;
+                ttl = displacedTtl;
+                distance = slotDistance;
+            }
+            index = (index + 1) & mask;
+            distance++;
+        }
+        table.hashes[index] = hash;
+        table.records[index] = record;
+        table.ttls[index] = ttl;
+    }
+
+    /**
+     * Empties the slot and shifts the keys probing past it one slot back, so
+     * no tombstones are left behind.
+     */
+    private static void delete(Table table, int index) {
+        int mask = table.mask;
+        int next = (index + 1) & mask;
+        while (table.hashes[next] != 0 && ((next - (table.hashes[next] & mask)) & mask) != 0) {
+            table.hashes[index] = table.hashes[next];
+            table.records[index] = table.records[next];
+            table.ttls[index] = table.ttls[next];
+            index = next;
+            next = (next + 1) & mask;
+        }
+        table.hashes[index] = 0;
+        table.records[index] = null;
+        table.ttls[index] = 0;
+    }
+
+    private static Table resize(Segment segment) {
+        Table old = segment.table;
+        Table table = new Table(old.hashes.length * 2);
+        for (int i = 0; i < old.hashes.length; i++) {
+            if (old.hashes[i] != 0) {
+                insert(table, old.hashes[i], old.records[i], old.ttls[i]);
+            }
+        }
+        segment.table = table;
+        return table;
+    }
+
+    private static boolean keyEquals(byte[] record, byte[] keyBytes) {
+        if (record == null || record.length < KEY_LENGTH_SIZE + keyBytes.length || readKeyLength(record) != keyBytes.length) {
+            return false;
+        }
+        return Arrays.equals(record, KEY_LENGTH_SIZE, KEY_LENGTH_SIZE + keyBytes.length, keyBytes, 0, keyBytes.length);
+    }
+
+    private static long weigh(byte[] record) {
+        return ENTRY_OVERHEAD + record.length;
+    }
+
+    private static int readKeyLength(byte[] record) {
+        return ((record[0] & 0xff) << 24) | ((record[1] & 0xff) << 16) | ((record[2] & 0xff) << 8) | (record[3] & 0xff);
+    }
+
+    private static void writeKeyLength(byte[] record, int keyLength) {
+        record[0] = (byte) (keyLength >>> 24);
+        record[1] = (byte) (keyLength >>> 16);
+        record[2] = (byte) (keyLength >>> 8);
+        record[3] = (byte) keyLength;
+    }
+
+    private Segment segmentOf(int hash) {
+        return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    /**
+     * Mixes the key's hash so both its top bits (segment) and low bits (slot)
+     * are well spread, never returning 0 as that marks an empty slot.
+     */
+    private static int hash(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,378 @@
+package com.memora.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+import com.google.protobuf.UnsafeByteOperations;
+import com.memora.exceptions.MemoraException;
+import com.memora.model.CacheEntry;
+import com.memora.model.SlabStats;
+
+/**
+ * Keeps keys, values and expiry timestamps in off-heap slabs. The heap only
+ * holds the index: per segment, a Robin Hood hash table of two parallel
+ * primitive arrays, the key's hash and the handle of the chunk holding its
+ * record, about 15 bytes an entry and no objects. Keys live in the records
+ * alone, a probe tells colliding keys apart by comparing the key bytes there.
+ *
+ * A record is laid out as [ttl: long][key length: int][value length: int][key][value].
+ * Writers of a key hold its segment's write lock while they swap the handle
+ * in the index and free the old chunk. Readers probe and copy the record out
+ * under an optimistic read of the segment and retry under the read lock if a
+ * writer got in the way, since the chunks they looked at may have been
+ * reused meanwhile.
+ */
+class OffHeapEntryStore implements EntryStore {
+
+    private static final int HEADER_SIZE = 16;
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.8f;
+    private static final int NOT_FOUND = -1;
+
+    private static final class Table {
+
+        private final int[] hashes; // 0 marks an empty slot
+        private final long[] handles;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.hashes = new int[capacity];
+            this.handles = new long[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+        private int size;
+    }
+
+    private final Segment[] segments;
+    private final SlabAllocator slabs;
+    private final AtomicLong payloadBytes;
+
+    OffHeapEntryStore(long capacityBytes) {
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+        this.slabs = new SlabAllocator(capacityBytes);
+        this.payloadBytes = new AtomicLong();
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        int hash = hash(key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        Segment segment = segmentOf(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                CacheEntry entry = read(segment.table, hash, key, keyBytes);
+                if (segment.lock.validate(stamp)) {
+                    return entry;
+                }
+            } catch (RuntimeException e) {
+                // A handle read while a writer changed it may point anywhere, read again under the lock
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return read(segment.table, hash, key, keyBytes);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean put(CacheEntry entry, WriteListener listener) {
+        int hash = hash(entry.getKey());
+        byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + keyBytes.length + entry.getValue().size();
+        if (recordSize > SlabAllocator.PAGE_SIZE) {
+            throw new MemoraException("Entry of " + recordSize + " bytes does not fit in an off-heap slab page");
+        }
+        long handle = slabs.allocate(recordSize);
+        if (handle == SlabAllocator.NO_HANDLE) {
+            return false;
+        }
+        write(handle, keyBytes, entry);
+
+        Segment segment = segmentOf(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int index = find(table, hash, keyBytes);
+            payloadBytes.addAndGet(recordSize);
+            if (index != NOT_FOUND) {
+                long previous = table.handles[index];
+                table.handles[index] = handle;
+                listener.onWrite(slabs.chunkSize(handle), slabs.chunkSize(previous));
+                release(previous);
+                return true;
+            }
+            if (segment.size + 1 > table.hashes.length * LOAD_FACTOR) {
+                table = resize(segment);
+            }
+            insert(table, hash, handle);
+            segment.size++;
+            listener.onWrite(slabs.chunkSize(handle), 0);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(String key, LongPredicate ttlCondition, LongConsumer listener) {
+        int hash = hash(key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        Segment segment = segmentOf(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int index = find(table, hash, keyBytes);
+            if (index == NOT_FOUND) {
+                return false;
+            }
+            long handle = table.handles[index];
+            if (!ttlCondition.test(slabs.buffer(handle).getLong(slabs.offset(handle)))) {
+                return false;
+            }
+            listener.accept(slabs.chunkSize(handle));
+            delete(table, index);
+            segment.size--;
+            release(handle);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copies every live entry back on the heap, meant for streaming a bucket out.
+     */
+    @Override
+    public Collection<CacheEntry> values() {
+        List<CacheEntry> entries = new ArrayList<>();
+        for (Segment segment : segments) {
+            entries.addAll(capture(segment));
+        }
+        return entries;
+    }
+
+    /**
+     * Copies one segment's entries on the heap at a time, under its read
+     * lock since its chunks may be reused once it is released, and hands
+     * them to the consumer after.
+     */
+    @Override
+    public void forEach(Consumer<CacheEntry> consumer) {
+        for (Segment segment : segments) {
+            capture(segment).forEach(consumer);
+        }
+    }
+
+    @Override
+    public SlabStats getSlabStats() {
+        long reserved = slabs.getReservedBytes();
+        long chunks = slabs.getChunkBytes();
+        long payload = payloadBytes.get();
+        return SlabStats.builder()
+                .capacityBytes(slabs.getCapacityBytes())
+                .reservedBytes(reserved)
+                .chunkBytes(chunks)
+                .payloadBytes(payload)
+                .internalFragmentation(chunks == 0 ? 0 : 1 - (double) payload / chunks)
+                .externalFragmentation(reserved == 0 ? 0 : 1 - (double) chunks / reserved)
+                .failedAllocations(slabs.getFailedAllocations())
+                .build();
+    }
+
+    private List<CacheEntry> capture(Segment segment) {
+        long stamp = segment.lock.readLock();
+        try {
+            Table table = segment.table;
+            List<CacheEntry> entries = new ArrayList<>(segment.size);
+            for (int i = 0; i < table.hashes.length; i++) {
+                if (table.hashes[i] != 0) {
+                    entries.add(toEntry(null, table.handles[i]));
+                }
+            }
+            return entries;
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks the key up, locked or not. Without the lock the result is only
+     * meaningful if the segment was not written meanwhile.
+     */
+    private CacheEntry read(Table table, int hash, String key, byte[] keyBytes) {
+        int index = find(table, hash, keyBytes);
+        if (index == NOT_FOUND) {
+            return null;
+        }
+        return toEntry(key, table.handles[index]);
+    }
+
+    // Copies the record out, reading the key from it too when not given
+    private CacheEntry toEntry(String key, long handle) {
+        ByteBuffer page = slabs.buffer(handle);
+        int offset = slabs.offset(handle);
+        long ttl = page.getLong(offset);
+        int keyLength = page.getInt(offset + 8);
+        int valueLength = page.getInt(offset + 12);
+        if (keyLength < 0 || valueLength < 0 || (long) HEADER_SIZE + keyLength + valueLength > slabs.chunkSize(handle)) {
+            return null; // Torn read of a reused chunk, the stamp will not validate
+        }
+        if (key == null) {
+            byte[] keyBytes = new byte[keyLength];
+            page.get(offset + HEADER_SIZE, keyBytes);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+        }
+        byte[] value = new byte[valueLength];
+        page.get(offset + HEADER_SIZE + keyLength, value);
+        return CacheEntry.builder()
+                .key(key)
+                .value(UnsafeByteOperations.unsafeWrap(value))
+                .ttl(ttl)
+                .build();
+    }
+
+    /**
+     * Same Robin Hood probing as {@link HeapEntryStore}, slots whose hash
+     * matches are only taken once their key bytes in the slab match too.
+     */
+    private int find(Table table, int hash, byte[] keyBytes) {
+        int mask = table.mask;
+        int index = hash & mask;
+        for (int distance = 0; distance <= mask; distance++) {
+            int slotHash = table.hashes[index];
+            if (slotHash == 0 || ((index - (slotHash & mask)) & mask) < distance) {
+                return NOT_FOUND;
+            }
+            if (slotHash == hash && keyEquals(table.handles[index], keyBytes)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    private static void insert(Table table, int hash, long handle) {
+        int mask = table.mask;
+        int index = hash & mask;
+        int distance = 0;
+        while (table.hashes[index] != 0) {
+            int slotDistance = (index - (table.hashes[index] & mask)) & mask;
+            if (slotDistance < distance) {
+                int displacedHash = table.hashes[index];
+                long displacedHandle = table.handles[index];
+                table.hashes[index] = hash;
+                table.handles[index] = handle;
+                hash = displacedHash;
+                handle = displacedHandle;
+                distance = slotDistance;
+            }
+            index = (index + 1) & mask;
+            distance++;
+        }
+        table.hashes[index] = hash;
+        table.handles[index] = handle;
+    }
+
+    // Backward shift deletion, no tombstones
+    private static void delete(Table table, int index) {
+        int mask = table.mask;
+        int next = (index + 1) & mask;
+        while (table.hashes[next] != 0 && ((next - (table.hashes[next] & mask)) & mask) != 0) {
+            table.hashes[index] = table.hashes[next];
+            table.handles[index] = table.handles[next];
+            index = next;
+            next = (next + 1) & mask;
+        }
+        table.hashes[index] = 0;
+        table.handles[index] = 0;
+    }
+
+    private static Table resize(Segment segment) {
+        Table old = segment.table;
+        Table table = new Table(old.hashes.length * 2);
+        for (int i = 0; i < old.hashes.length; i++) {
+            if (old.hashes[i] != 0) {
+                insert(table, old.hashes[i], old.handles[i]);
+            }
+        }
+        segment.table = table;
+        return table;
+    }
+
+    private boolean keyEquals(long handle, byte[] keyBytes) {
+        ByteBuffer page = slabs.buffer(handle);
+        int offset = slabs.offset(handle);
+        if (page.getInt(offset + 8) != keyBytes.length || HEADER_SIZE + keyBytes.length > slabs.chunkSize(handle)) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (page.get(offset + HEADER_SIZE + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(long handle, byte[] key, CacheEntry entry) {
+        ByteBuffer page = slabs.buffer(handle);
+        int offset = slabs.offset(handle);
+        page.putLong(offset, entry.getTtl());
+        page.putInt(offset + 8, key.length);
+        page.putInt(offset + 12, entry.getValue().size());
+        page.put(offset + HEADER_SIZE, key);
+        entry.getValue().copyTo(page.duplicate().position(offset + HEADER_SIZE + key.length));
+    }
+
+    private void release(long handle) {
+        ByteBuffer page = slabs.buffer(handle);
+        int offset = slabs.offset(handle);
+        payloadBytes.addAndGet(-(HEADER_SIZE + page.getInt(offset + 8) + page.getInt(offset + 12)));
+        slabs.free(handle);
+    }
+
+    private Segment segmentOf(int hash) {
+        return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    // Same mixing as HeapEntryStore, 0 stays free to mark empty slots
+    private static int hash(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,215 @@
+package com.memora.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memcached style slab allocator over direct byte buffers.
+ *
+ * Memory is reserved in pages of 1MB. A page is carved into equal chunks of
+ * one size class, classes growing by 1.25x from 64 bytes up to a whole page,
+ * and a record goes into the smallest chunk that fits it. A page whose chunks
+ * are all free goes back to a shared pool, so size classes that shrink hand
+ * their memory to the ones that grow.
+ *
+ * A chunk is addressed by a handle packing its page, size class and index in
+ * the page, so its bounds are known from the handle alone even after the
+ * chunk has been freed and reused.
+ */
+final class SlabAllocator {
+
+    static final int PAGE_SIZE = 1 << 20;
+    static final long NO_HANDLE = -1;
+
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25;
+    private static final int CHUNK_BITS = 24;
+    private static final int CLASS_BITS = 8;
+
+    private static final class Page {
+
+        private final int index;
+        private final ByteBuffer buffer;
+        private int chunkCount;
+        private int nextChunk; // Chunks from here on were never handed out
+        private int used;
+        private int[] freeChunks = new int[16];
+        private int freeCount;
+        private boolean partial; // Queued in its size class as having room
+
+        private Page(int index) {
+            this.index = index;
+            this.buffer = ByteBuffer.allocateDirect(PAGE_SIZE);
+        }
+    }
+
+    private static final class SizeClass {
+
+        private final ArrayDeque<Page> partialPages = new ArrayDeque<>();
+    }
+
+    private final long capacityBytes;
+    private final int[] chunkSizes;
+    private final SizeClass[] classes;
+    private final Page[] pages;
+    private final ArrayDeque<Page> freePages; // Also guards pageCount
+    private int pageCount;
+
+    private final AtomicLong reservedBytes;
+    private final AtomicLong chunkBytes;
+    private final LongAdder failedAllocations;
+
+    SlabAllocator(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+        this.chunkSizes = chunkSizes();
+        this.classes = new SizeClass[chunkSizes.length];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new SizeClass();
+        }
+        // Always at least one page, however small the capacity
+        this.pages = new Page[(int) Math.max(1, Math.min(Integer.MAX_VALUE, capacityBytes / PAGE_SIZE))];
+        this.freePages = new ArrayDeque<>();
+        this.reservedBytes = new AtomicLong();
+        this.chunkBytes = new AtomicLong();
+        this.failedAllocations = new LongAdder();
+    }
+
+    /**
+     * Hands out a chunk of at least the given size, or NO_HANDLE if no page
+     * of its size class has room and no page is left to carve.
+     */
+    long allocate(int size) {
+        int sizeClass = sizeClassOf(size);
+        SizeClass slab = classes[sizeClass];
+        synchronized (slab) {
+            Page page = slab.partialPages.peekFirst();
+            if (page == null) {
+                page = takePage(sizeClass);
+                if (page == null) {
+                    failedAllocations.increment();
+                    return NO_HANDLE;
+                }
+                page.partial = true;
+                slab.partialPages.addFirst(page);
+            }
+            int chunk = page.freeCount > 0 ? page.freeChunks[--page.freeCount] : page.nextChunk++;
+            if (++page.used == page.chunkCount) {
+                slab.partialPages.pollFirst();
+                page.partial = false;
+            }
+            chunkBytes.addAndGet(chunkSizes[sizeClass]);
+            return ((long) page.index << (CHUNK_BITS + CLASS_BITS)) | ((long) sizeClass << CHUNK_BITS) | chunk;
+        }
+    }
+
+    void free(long handle) {
+        int sizeClass = sizeClassOf(handle);
+        SizeClass slab = classes[sizeClass];
+        Page page = pages[pageOf(handle)];
+        synchronized (slab) {
+            chunkBytes.addAndGet(-chunkSizes[sizeClass]);
+            if (--page.used > 0) {
+                if (page.freeCount == page.freeChunks.length) {
+                    page.freeChunks = Arrays.copyOf(page.freeChunks, page.freeCount * 2);
+                }
+                page.freeChunks[page.freeCount++] = chunkOf(handle);
+                if (!page.partial) {
+                    page.partial = true;
+                    slab.partialPages.addLast(page);
+                }
+                return;
+            }
+            if (page.partial) {
+                slab.partialPages.remove(page);
+                page.partial = false;
+            }
+        }
+        synchronized (freePages) {
+            freePages.push(page);
+        }
+        reservedBytes.addAndGet(-PAGE_SIZE);
+    }
+
+    ByteBuffer buffer(long handle) {
+        return pages[pageOf(handle)].buffer;
+    }
+
+    int offset(long handle) {
+        return chunkOf(handle) * chunkSizes[sizeClassOf(handle)];
+    }
+
+    int chunkSize(long handle) {
+        return chunkSizes[sizeClassOf(handle)];
+    }
+
+    long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    long getChunkBytes() {
+        return chunkBytes.get();
+    }
+
+    long getFailedAllocations() {
+        return failedAllocations.sum();
+    }
+
+    /**
+     * Takes a page from the pool, or a new one while under capacity, and
+     * carves it for the given size class.
+     */
+    private Page takePage(int sizeClass) {
+        Page page;
+        synchronized (freePages) {
+            page = freePages.poll();
+            if (page == null) {
+                if (pageCount == pages.length) {
+                    return null;
+                }
+                page = new Page(pageCount);
+                pages[pageCount++] = page;
+            }
+        }
+        reservedBytes.addAndGet(PAGE_SIZE);
+        page.chunkCount = PAGE_SIZE / chunkSizes[sizeClass];
+        page.nextChunk = 0;
+        page.used = 0;
+        page.freeCount = 0;
+        return page;
+    }
+
+    private int sizeClassOf(int size) {
+        int index = Arrays.binarySearch(chunkSizes, size);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static int sizeClassOf(long handle) {
+        return (int) (handle >>> CHUNK_BITS) & ((1 << CLASS_BITS) - 1);
+    }
+
+    private static int pageOf(long handle) {
+        return (int) (handle >>> (CHUNK_BITS + CLASS_BITS));
+    }
+
+    private static int chunkOf(long handle) {
+        return (int) handle & ((1 << CHUNK_BITS) - 1);
+    }
+
+    private static int[] chunkSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        for (int size = MIN_CHUNK_SIZE; size < PAGE_SIZE; size = (int) Math.ceil(size * GROWTH_FACTOR / 8) * 8) {
+            sizes.add(size);
+        }
+        sizes.add(PAGE_SIZE);
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,158 @@
+package com.memora.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import com.google.protobuf.ByteString;
+import com.memora.exceptions.MemoraException;
+import com.memora.model.CacheEntry;
+
+/**
+ * Binary image of a bucket on disk, one chunk file per bucket.
+ *
+ * A chunk is [magic: int][WAL version: long] followed by blocks of
+ * [length: int][crc32c: int][records], and ends with an empty block holding
+ * the number of entries written. A record is [key length: int][value length: int][ttl: long][key][value]
+ * and never spans two blocks, so each block is checked before any of its
+ * records is read.
+ */
+public final class Snapshot {
+
+    private static final int MAGIC = 0x4d534e50; // "MSNP"
+    private static final int HEADER_SIZE = 12;
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes the entries the source hands out to a new chunk file and forces
+     * it to disk, returns how many were written.
+     */
+    public static long write(Path file, long version, Consumer<Consumer<CacheEntry>> source) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(version).flip();
+            writeFully(channel, header);
+
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+            block.position(BLOCK_HEADER_SIZE);
+            long[] entries = new long[1];
+            ByteBuffer[] current = {block};
+            try {
+                source.accept(entry -> {
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    int recordSize = RECORD_HEADER_SIZE + key.length + entry.getValue().size();
+                    if (current[0].remaining() < recordSize) {
+                        flushBlock(channel, current[0]);
+                        // A record larger than a block gets a block of its own
+                        current[0] = recordSize > BLOCK_SIZE - BLOCK_HEADER_SIZE ? ByteBuffer.allocate(BLOCK_HEADER_SIZE + recordSize) : block;
+                        current[0].clear().position(BLOCK_HEADER_SIZE);
+                    }
+                    ByteBuffer buffer = current[0];
+                    buffer.putInt(key.length).putInt(entry.getValue().size()).putLong(entry.getTtl()).put(key);
+                    entry.getValue().copyTo(buffer);
+                    entries[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            flushBlock(channel, current[0]);
+
+            ByteBuffer trailer = ByteBuffer.allocate(BLOCK_HEADER_SIZE + Long.BYTES).putInt(0).putInt(0).putLong(entries[0]).flip();
+            writeFully(channel, trailer);
+            channel.force(true);
+            return entries[0];
+        }
+    }
+
+    /**
+     * Hands every entry of a chunk file to the consumer and returns the WAL
+     * version the chunk was taken at. Throws if the file is damaged, after
+     * the entries of the blocks before the damage were handed out.
+     */
+    public static long read(Path file, Consumer<CacheEntry> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, ByteBuffer.allocate(HEADER_SIZE), file);
+            if (header.getInt() != MAGIC) {
+                throw new MemoraException("Not a snapshot chunk: " + file);
+            }
+            long version = header.getLong();
+
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+            ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            long entries = 0;
+            while (true) {
+                readFully(channel, blockHeader.clear(), file);
+                int length = blockHeader.getInt();
+                int checksum = blockHeader.getInt();
+                if (length == 0) {
+                    long expected = readFully(channel, ByteBuffer.allocate(Long.BYTES), file).getLong();
+                    if (expected != entries) {
+                        throw new MemoraException("Snapshot chunk " + file + " holds " + entries + " entries, expected " + expected);
+                    }
+                    return version;
+                }
+                if (length < 0) {
+                    throw new MemoraException("Corrupt block in snapshot chunk " + file);
+                }
+                ByteBuffer records = readFully(channel, length > block.capacity() ? ByteBuffer.allocate(length) : block.clear().limit(length), file);
+                CRC32C crc = new CRC32C();
+                crc.update(records.array(), 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    throw new MemoraException("Checksum mismatch in snapshot chunk " + file);
+                }
+                while (records.hasRemaining()) {
+                    int keyLength = records.getInt();
+                    int valueLength = records.getInt();
+                    long ttl = records.getLong();
+                    String key = new String(records.array(), records.position(), keyLength, StandardCharsets.UTF_8);
+                    records.position(records.position() + keyLength);
+                    // Copied out since the block buffer is reused for the next block
+                    ByteString value = ByteString.copyFrom(records.array(), records.position(), valueLength);
+                    records.position(records.position() + valueLength);
+                    consumer.accept(CacheEntry.builder().key(key).value(value).ttl(ttl).build());
+                    entries++;
+                }
+            }
+        }
+    }
+
+    private static void flushBlock(FileChannel channel, ByteBuffer block) {
+        int length = block.position() - BLOCK_HEADER_SIZE;
+        if (length == 0) {
+            return;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(block.array(), BLOCK_HEADER_SIZE, length);
+        block.putInt(0, length).putInt(4, (int) crc.getValue()).flip();
+        try {
+            writeFully(channel, block);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, Path file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new MemoraException("Snapshot chunk " + file + " is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+}
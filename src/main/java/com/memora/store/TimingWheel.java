@@ -0,0 +1,131 @@
+package com.memora.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel tracking when keys expire.
+ *
+ * Four wheels of 64 slots each cover 64, 64^2, 64^3 and 64^4 ticks. A timer is
+ * placed on the coarsest wheel it fits in and cascades down to finer wheels as
+ * time approaches its deadline, so advancing by one tick only touches the
+ * timers that are due and the slots that cascade on that tick.
+ *
+ * {@link #schedule(String, long)} may be called from any thread; it only
+ * enqueues the timer. {@link #advance(long, Consumer)} must be called by one
+ * thread at a time.
+ */
+public class TimingWheel {
+
+    public static class Timer {
+
+        private final String key;
+        private final long expiresAt;
+
+        Timer(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final List<List<List<Timer>>> wheels;
+    private final List<Timer> overflow; // Timers further out than the top wheel reaches
+    private final ConcurrentLinkedQueue<Timer> pending;
+    private long currentTick;
+
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.wheels = new ArrayList<>(LEVELS);
+        for (int level = 0; level < LEVELS; level++) {
+            List<List<Timer>> wheel = new ArrayList<>(WHEEL_SIZE);
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheel.add(new ArrayList<>());
+            }
+            wheels.add(wheel);
+        }
+        this.overflow = new ArrayList<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Registers a key expiring at the given epoch milliseconds.
+     */
+    public void schedule(String key, long expiresAt) {
+        pending.offer(new Timer(key, expiresAt));
+    }
+
+    /**
+     * Moves the wheel forward to the given time and hands every timer that is
+     * now due to the consumer.
+     */
+    public void advance(long nowMillis, Consumer<Timer> consumer) {
+        Timer timer;
+        while ((timer = pending.poll()) != null) {
+            add(timer, currentTick + 1);
+        }
+
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Cascade coarse wheels first so timers due on this tick land in its slot
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                    cascade(slotOf(level, currentTick));
+                    if (level == LEVELS - 1) {
+                        cascade(overflow);
+                    }
+                }
+            }
+            List<Timer> due = slotOf(0, currentTick);
+            due.forEach(consumer);
+            due.clear();
+        }
+    }
+
+    private void cascade(List<Timer> slot) {
+        if (slot.isEmpty()) {
+            return;
+        }
+        List<Timer> timers = new ArrayList<>(slot);
+        slot.clear();
+        timers.forEach(timer -> add(timer, currentTick));
+    }
+
+    /**
+     * Places the timer on the coarsest wheel whose range covers its deadline,
+     * never earlier than the given tick.
+     */
+    private void add(Timer timer, long minimumTick) {
+        // A key is expired once now > expiresAt, which first holds on the tick after it
+        long expireTick = Math.max(timer.getExpiresAt() / tickMillis + 1, minimumTick);
+        long delta = expireTick - currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (WHEEL_BITS * (level + 1)))) {
+                slotOf(level, expireTick).add(timer);
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    private List<Timer> slotOf(int level, long tick) {
+        return wheels.get(level).get((int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK));
+    }
+}
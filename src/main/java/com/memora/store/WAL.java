@@ -1,34 +1,1105 @@
 package com.memora.store;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.memora.core.Version;
+import com.memora.enums.WalDurability;
 import com.memora.exceptions.MemoraException;
+import com.memora.messages.KeyCommand;
+import com.memora.messages.KeyCommandBatch;
+import com.memora.messages.PutCommand;
+import com.memora.messages.PutCommandBatch;
 import com.memora.messages.RpcRequest;
+import com.memora.model.CompactionStats;
 
-public class WAL {
-    // Write-Ahead Log implementation
-    private static final Map<Long, byte[]> wal = new ConcurrentHashMap<>();
+import lombok.extern.slf4j.Slf4j;
 
-    private WAL() {
+/**
+ * Append-only write-ahead log of the mutations applied on this node, kept on
+ * disk as a sequence of segment files named after the first version they hold.
+ *
+ * A record is [payload length: int][crc32c of payload: int][version: long][timestamp: long][payload],
+ * the payload being the serialized request. On open, the tail of the last
+ * segment is checked and anything after the last intact record, left by a
+ * crash mid-write, is cut off. A corrupt record in any other segment, or a
+ * segment not starting right after the one before it, would leave a hole in
+ * the versions replayed and served to replicas, so the WAL refuses to open.
+ *
+ * How long a write waits for the disk depends on the durability mode: not at
+ * all with NONE, at most the sync interval with PERIODIC, and until its record
+ * has been fsynced with BATCH. In BATCH mode concurrent writers share fsyncs:
+ * the first one to wait syncs everything appended so far and the others wait
+ * for it rather than each forcing the file on their own.
+ *
+ * Mutations go through {@link #apply(RpcRequest, LongConsumer)}, which logs
+ * them and applies them to the buckets within an epoch, so a snapshot can ask
+ * for a {@link #checkpoint()}: a version every mutation up to which has made
+ * it into the buckets.
+ *
+ * The latest records are also kept off-heap, in the same layout, so replicas
+ * catching up read contiguous {@link #range(long, long, int)}s of them from
+ * memory rather than one request at a time.
+ *
+ * Closed segments no replica needs anymore can be {@link #compact(long)}ed:
+ * merged into one holding only the last write or delete of each key, under
+ * the name of the first of them. A merged segment is written aside and moved
+ * over the first one's file before the others are deleted, so on open any
+ * segment starting at or below a version already seen is one a crash kept
+ * from being deleted.
+ *
+ * Readers retain the segment they read, so one retired or compacted away
+ * meanwhile is only closed, and deleted, once the last of them releases it.
+ */
+@Slf4j
+public class WAL implements AutoCloseable {
+
+    static final int HEADER_SIZE = 24;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTION_SUFFIX = ".compact";
+    private static final int MAX_COMPACTION_SEGMENTS = 8; // Segments merged in one compaction
+    private static final int INDEX_INTERVAL = 256; // Records between two entries of a segment's sparse index
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * A mutation as it was logged.
+     */
+    public static class Record {
+
+        private final long version;
+        private final long timestamp;
+        private final byte[] payload;
+
+        Record(long version, long timestamp, byte[] payload) {
+            this.version = version;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        // When the mutation was logged, relative expiries in it count from here
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public RpcRequest getRequest() {
+            try {
+                return RpcRequest.parseFrom(payload);
+            } catch (InvalidProtocolBufferException e) {
+                throw new MemoraException("Failed to parse WAL entry " + version, e);
+            }
+        }
+    }
+
+    /**
+     * Byte range of a segment file holding whole records. The segment stays
+     * open until the span is released.
+     */
+    public static class Span {
+
+        private final Segment segment;
+        private final long offset;
+        private final long length;
+
+        private Span(Segment segment, long offset, long length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public FileChannel getChannel() {
+            return segment.channel;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public void release() {
+            segment.release();
+        }
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final long firstVersion;
+        private final FileChannel channel;
+        private volatile long size; // Bytes taken by complete records
+        private volatile long lastVersion; // 0 while empty
+        private int records;
+        private long[] index = new long[32]; // (version, offset) pairs of every INDEX_INTERVAL-th record
+        private volatile int indexed;
+        private boolean compacted; // Already holds one record per key, guarded by the maintenance lock
+        private final AtomicInteger references = new AtomicInteger(1); // The WAL's own while listed, plus one per reader
+        private volatile boolean obsolete; // Delete the file once the last reference is released
+
+        private Segment(Path path, long firstVersion, FileChannel channel) {
+            this.path = path;
+            this.firstVersion = firstVersion;
+            this.channel = channel;
+        }
+
+        /**
+         * Takes a reference to the segment, returns false if it is already
+         * closed.
+         */
+        private boolean retain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /**
+         * Drops a reference, closing the segment with the last one.
+         */
+        private void release() {
+            if (references.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                channel.close();
+                if (obsolete) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                log.error("Failed to delete WAL segment {}", path, e);
+            }
+        }
+
+        /**
+         * Accounts for a record written at the given offset, by one thread at a time.
+         */
+        private void track(long version, long offset, int recordSize) {
+            if (records++ % INDEX_INTERVAL == 0) {
+                if (indexed * 2 == index.length) {
+                    index = Arrays.copyOf(index, index.length * 2);
+                }
+                index[indexed * 2] = version;
+                index[indexed * 2 + 1] = offset;
+                indexed++;
+            }
+            lastVersion = version;
+            size = offset + recordSize;
+        }
+
+        /**
+         * Returns the offset of the first indexed record after the version,
+         * or the end of the segment if there is none.
+         */
+        private long seekAfter(long version) {
+            int count = indexed;
+            long[] pairs = index;
+            for (int low = 0, high = count - 1; low <= high; ) {
+                int middle = (low + high) >>> 1;
+                if (pairs[middle * 2] <= version) {
+                    low = middle + 1;
+                } else if (middle == 0 || pairs[(middle - 1) * 2] <= version) {
+                    return pairs[middle * 2 + 1];
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Returns the offset of the last indexed record at or before the version.
+         */
+        private long seek(long version) {
+            int count = indexed;
+            long[] pairs = index;
+            long offset = 0;
+            for (int low = 0, high = count - 1; low <= high; ) {
+                int middle = (low + high) >>> 1;
+                if (pairs[middle * 2] <= version) {
+                    offset = pairs[middle * 2 + 1];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return offset;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        // Returns whether to carry on reading
+        boolean visit(Record record, long offset, int recordSize);
+    }
+
+    private final Path directory;
+    private final WalDurability durability;
+    private final long syncIntervalMillis;
+    private final long segmentSize;
+    private final ConcurrentSkipListMap<Long, Segment> segments; // By first version
+    private final WalTail tail; // Latest records in memory, null if disabled
+
+    private final ReentrantLock appendLock;
+    private final ReentrantLock maintenanceLock; // Retiring and compacting segments
+    private volatile Segment active;
+    private volatile long lastVersion;
+
+    private final LongAdder[] started; // Mutations begun, per epoch
+    private final LongAdder[] finished;
+    private volatile int epoch;
+    private volatile int draining = -1; // Epoch a checkpoint waits to see drained, -1 if none
+    private final ReentrantLock drainLock;
+    private final Condition drained;
+
+    private final ReentrantLock syncLock;
+    private final Condition synced;
+    private boolean syncing;
+    private long durableVersion;
+
+    private volatile CompactionStats compactionStats;
+    private long compactions;
+
+    public WAL(Path directory, WalDurability durability, long syncIntervalMillis, long segmentSize, long tailSize) {
+        this.directory = directory;
+        this.durability = durability;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.segmentSize = segmentSize;
+        this.segments = new ConcurrentSkipListMap<>();
+        this.appendLock = new ReentrantLock();
+        this.maintenanceLock = new ReentrantLock();
+        this.started = new LongAdder[] {new LongAdder(), new LongAdder()};
+        this.finished = new LongAdder[] {new LongAdder(), new LongAdder()};
+        this.drainLock = new ReentrantLock();
+        this.drained = drainLock.newCondition();
+        this.syncLock = new ReentrantLock();
+        this.synced = syncLock.newCondition();
+        recover();
+        this.tail = tailSize > 0 ? new WalTail((int) Math.min(tailSize, Integer.MAX_VALUE), lastVersion) : null;
+        Version.track(this::getLastVersion);
+    }
+
+    /**
+     * Logs the request, then runs the mutation applying it with the version
+     * it was logged under. In BATCH mode the mutation only runs once the
+     * record is on disk.
+     */
+    public void apply(RpcRequest request, LongConsumer mutation) {
+        int current = enter();
+        try {
+            mutation.accept(log(request));
+        } finally {
+            leave(current, finished[current]::increment);
+        }
     }
 
-    public static void log(RpcRequest request) {
-        long version = Version.increment();
-        wal.put(version, request.toByteArray());
+    /**
+     * Returns a version every mutation up to which has been applied, waiting
+     * for the ones logged but still being applied. Later mutations are not
+     * held back.
+     */
+    public synchronized long checkpoint() {
+        long version = lastVersion;
+        int previous = epoch;
+        draining = previous;
+        epoch = previous ^ 1;
+        // Mutations logged up to the version entered the previous epoch, wait for all of them to leave it
+        drainLock.lock();
+        try {
+            while (finished[previous].sum() != started[previous].sum()) {
+                drained.awaitUninterruptibly();
+            }
+        } finally {
+            draining = -1;
+            drainLock.unlock();
+        }
+        return version;
     }
 
-    public static RpcRequest get(long version) {
+    /**
+     * Appends the request and returns the version it was logged under. In
+     * BATCH mode this only returns once the record is on disk.
+     */
+    private long log(RpcRequest request) {
+        byte[] payload = request.toByteArray();
+        long version;
+        appendLock.lock();
         try {
-            if (!wal.containsKey(version)) {
-                throw new MemoraException("WAL entry not found for version " + version);
+            version = lastVersion + 1; // Appends are serialized by the lock, so no shared counter is needed
+            append(version, System.currentTimeMillis(), payload);
+        } finally {
+            appendLock.unlock();
+        }
+        if (durability == WalDurability.BATCH) {
+            awaitDurable(version);
+        }
+        return version;
+    }
+
+    private int enter() {
+        while (true) {
+            int current = epoch;
+            started[current].increment();
+            if (epoch == current) {
+                return current;
+            }
+            // A checkpoint flipped the epoch meanwhile, join the new one
+            leave(current, started[current]::decrement);
+        }
+    }
+
+    /**
+     * Counts a mutation out of the epoch, waking a checkpoint waiting for
+     * the epoch to drain. The count is updated before the epoch being
+     * drained is read, and a checkpoint marks it before reading the counts,
+     * so one of the two always sees the other.
+     */
+    private void leave(int current, Runnable count) {
+        count.run();
+        if (draining == current) {
+            drainLock.lock();
+            try {
+                drained.signalAll();
+            } finally {
+                drainLock.unlock();
             }
-            return RpcRequest.parseFrom(wal.get(version));
-        } catch (InvalidProtocolBufferException e) {
-            throw new MemoraException("Failed to parse WAL entry", e);
         }
     }
 
-}
\ No newline at end of file
+    public RpcRequest get(long version) {
+        byte[] cached = tail != null ? tail.read(version, version, 0) : null;
+        if (cached != null) {
+            Record[] record = new Record[1];
+            decode(ByteBuffer.wrap(cached), decoded -> record[0] = decoded);
+            return record[0].getRequest();
+        }
+        Record[] found = new Record[1];
+        Segment segment = retain(() -> segments.floorEntry(version));
+        if (segment != null) {
+            try {
+                scan(segment, segment.seek(version), segment.size, (record, offset, recordSize) -> {
+                    if (record.getVersion() == version) {
+                        found[0] = record;
+                    }
+                    return record.getVersion() < version;
+                });
+            } finally {
+                segment.release();
+            }
+        }
+        if (found[0] == null) {
+            throw new MemoraException("WAL entry not found for version " + version);
+        }
+        return found[0].getRequest();
+    }
+
+    /**
+     * Hands every record from the given version on to the consumer, oldest first.
+     */
+    public void replay(long fromVersion, Consumer<Record> consumer) {
+        Segment segment = retain(() -> {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(fromVersion);
+            return entry != null ? entry : segments.firstEntry();
+        });
+        while (segment != null) {
+            try {
+                scan(segment, segment.seek(fromVersion), segment.size, (record, offset, recordSize) -> {
+                    if (record.getVersion() >= fromVersion) {
+                        consumer.accept(record);
+                    }
+                    return true;
+                });
+            } finally {
+                segment.release();
+            }
+            long firstVersion = segment.firstVersion;
+            segment = retain(() -> segments.higherEntry(firstVersion));
+        }
+    }
+
+    /**
+     * Returns the records from one version up to another exactly as they are
+     * laid out on disk, at most maxBytes of them unless the first record alone
+     * is larger, to be read back with {@link #decode(ByteBuffer, Consumer)}.
+     * Recent records are copied from memory, older ones read from the segment
+     * holding them, so a frame never spans two segments. Empty once past the
+     * last version.
+     */
+    public byte[] range(long fromVersion, long toVersion, int maxBytes) {
+        if (fromVersion > Math.min(toVersion, lastVersion)) {
+            return new byte[0];
+        }
+        if (tail != null) {
+            byte[] frame = tail.read(fromVersion, toVersion, maxBytes);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        Segment segment = fromVersion < segments.firstKey() ? null : retain(() -> segments.floorEntry(fromVersion));
+        if (segment == null) {
+            throw new MemoraException("WAL no longer holds version " + fromVersion);
+        }
+        try {
+            return range(segment, fromVersion, toVersion, maxBytes);
+        } finally {
+            segment.release();
+        }
+    }
+
+    private byte[] range(Segment segment, long fromVersion, long toVersion, int maxBytes) {
+        long[] start = {-1, 0}; // Offset and size of the first record
+        scan(segment, segment.seek(fromVersion), segment.size, (record, offset, recordSize) -> {
+            if (record.getVersion() < fromVersion) {
+                return true;
+            }
+            start[0] = offset;
+            start[1] = recordSize;
+            return false;
+        });
+        if (start[0] < 0) {
+            return new byte[0];
+        }
+        int length = (int) Math.min(segment.size - start[0], Math.max(maxBytes, start[1]));
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        try {
+            while (frame.hasRemaining()) {
+                if (segment.channel.read(frame, start[0] + frame.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new MemoraException("Failed to read WAL segment " + segment.path, e);
+        }
+        int whole = frameLength(frame.array(), frame.position(), toVersion);
+        return whole == length ? frame.array() : Arrays.copyOf(frame.array(), whole);
+    }
+
+    /**
+     * Locates records from one version up to another in the segment holding
+     * the first, for sending the file's bytes as they are. Unlike a range,
+     * nothing is read: the span is cut at indexed records, so it may start
+     * up to an index interval before the first version and end up to one
+     * after the last, and only goes past maxBytes by less than an interval.
+     * Returns null if the versions are not on disk any more, or if there are
+     * none past the first; the span returned must be released once sent.
+     */
+    public Span locate(long fromVersion, long toVersion, int maxBytes) {
+        if (fromVersion > Math.min(toVersion, lastVersion) || fromVersion < segments.firstKey()) {
+            return null;
+        }
+        Segment segment = retain(() -> segments.floorEntry(fromVersion));
+        if (segment == null) {
+            return null;
+        }
+        long start = segment.seek(fromVersion);
+        long end = segment.seekAfter(toVersion);
+        if (end - start > maxBytes) {
+            // Stop at the first indexed record past the budget
+            end = Math.min(end, segment.seekAfter(versionAt(segment, start + maxBytes)));
+        }
+        // Read last, as records are indexed before they count in the size
+        end = Math.min(end, segment.size);
+        if (end <= start) {
+            segment.release();
+            return null;
+        }
+        return new Span(segment, start, end - start);
+    }
+
+    /**
+     * Retains the segment the lookup finds, looking again if it was retired
+     * or compacted away in between. Returns null if there is none.
+     */
+    private Segment retain(Supplier<Map.Entry<Long, Segment>> lookup) {
+        while (true) {
+            Map.Entry<Long, Segment> entry = lookup.get();
+            if (entry == null || entry.getValue().retain()) {
+                return entry != null ? entry.getValue() : null;
+            }
+        }
+    }
+
+    /**
+     * Hands each record of a frame returned by {@link #range(long, long, int)}
+     * to the consumer, returns how many there were.
+     */
+    public static int decode(ByteBuffer frame, Consumer<Record> consumer) {
+        int records = 0;
+        while (frame.remaining() >= HEADER_SIZE) {
+            int payloadLength = frame.getInt();
+            int checksum = frame.getInt();
+            long version = frame.getLong();
+            long timestamp = frame.getLong();
+            if (payloadLength < 0 || payloadLength > frame.remaining()) {
+                throw new MemoraException("Truncated WAL record " + version + " in frame");
+            }
+            byte[] payload = new byte[payloadLength];
+            frame.get(payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                throw new MemoraException("Corrupt WAL record " + version + " in frame");
+            }
+            consumer.accept(new Record(version, timestamp, payload));
+            records++;
+        }
+        return records;
+    }
+
+    // Version of the last indexed record at or before the offset
+    private static long versionAt(Segment segment, long offset) {
+        int count = segment.indexed;
+        long[] pairs = segment.index;
+        long version = segment.firstVersion;
+        for (int low = 0, high = count - 1; low <= high; ) {
+            int middle = (low + high) >>> 1;
+            if (pairs[middle * 2 + 1] <= offset) {
+                version = pairs[middle * 2];
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Returns how many of the first bytes of the frame are whole records with
+     * versions up to the given one.
+     */
+    static int frameLength(byte[] frame, int length, long toVersion) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame, 0, length);
+        int whole = 0;
+        while (whole + HEADER_SIZE <= length) {
+            int recordSize = HEADER_SIZE + buffer.getInt(whole);
+            if (recordSize < HEADER_SIZE || whole + recordSize > length || buffer.getLong(whole + 8) > toVersion) {
+                break;
+            }
+            whole += recordSize;
+        }
+        return whole;
+    }
+
+    /**
+     * Deletes the closed segments holding only versions up to the given one,
+     * returns how many were deleted. Does nothing while a compaction runs,
+     * the next call will.
+     */
+    public int retire(long upToVersion) {
+        if (!maintenanceLock.tryLock()) {
+            return 0;
+        }
+        int retired = 0;
+        try {
+            for (Segment segment : segments.values()) {
+                if (segment == active || segment.lastVersion > upToVersion) {
+                    break;
+                }
+                segments.remove(segment.firstVersion);
+                segment.obsolete = true;
+                segment.release();
+                retired++;
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+        return retired;
+    }
+
+    /**
+     * Merges the oldest closed segments holding only versions up to the given
+     * one, at most MAX_COMPACTION_SEGMENTS of them, into one where each key
+     * keeps only its last write or delete. Records keep their version and
+     * timestamp, so replaying the merged segment gives the same entries as
+     * replaying the originals. Returns what was done, or null if there was
+     * nothing new to compact.
+     */
+    public CompactionStats compact(long upToVersion) {
+        if (!maintenanceLock.tryLock()) {
+            return null;
+        }
+        try {
+            List<Segment> window = new ArrayList<>();
+            boolean pending = false;
+            for (Segment segment : segments.values()) {
+                if (segment == active || segment.lastVersion > upToVersion || window.size() == MAX_COMPACTION_SEGMENTS) {
+                    break;
+                }
+                window.add(segment);
+                pending |= !segment.compacted;
+            }
+            if (!pending) {
+                return null;
+            }
+            return compact(window);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to compact WAL segments up to version {}", upToVersion, e);
+            return null;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private CompactionStats compact(List<Segment> window) throws IOException {
+        long start = System.nanoTime();
+        // Version of the last write or delete of each key
+        Map<String, Long> latest = new HashMap<>();
+        long[] before = {0, 0}; // Bytes, records
+        for (Segment segment : window) {
+            scan(segment, 0, segment.size, (record, offset, recordSize) -> {
+                for (String key : keysOf(record.getRequest())) {
+                    latest.put(key, record.getVersion());
+                }
+                before[1]++;
+                return true;
+            });
+            before[0] += segment.size;
+        }
+
+        Segment first = window.get(0);
+        // The last record is always kept, it tells on open where the merged segment ends
+        long lastVersion = window.get(window.size() - 1).lastVersion;
+        Path merged = first.path.resolveSibling(first.path.getFileName() + COMPACTION_SUFFIX);
+        long[] after = {0, 0};
+        try (FileChannel channel = FileChannel.open(merged, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Segment segment : window) {
+                scan(segment, 0, segment.size, (record, offset, recordSize) -> {
+                    byte[] payload = liveOf(record, latest, record.getVersion() == lastVersion);
+                    if (payload != null) {
+                        after[0] += write(channel, after[0], record.getVersion(), record.getTimestamp(), payload);
+                        after[1]++;
+                    }
+                    return true;
+                });
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(merged);
+            throw e;
+        }
+
+        // Readers holding the originals keep reading them, the merged file takes the first one's name
+        Files.move(merged, first.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Segment compacted = open(first.firstVersion);
+        scan(compacted, 0, after[0], (record, offset, recordSize) -> {
+            compacted.track(record.getVersion(), offset, recordSize);
+            return true;
+        });
+        compacted.compacted = true;
+        segments.put(first.firstVersion, compacted);
+        for (Segment segment : window) {
+            if (segment != first) {
+                segments.remove(segment.firstVersion);
+                segment.obsolete = true;
+            }
+            segment.release();
+        }
+
+        long durationMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        CompactionStats stats = CompactionStats.builder()
+                .runs(++compactions)
+                .compactedAt(System.currentTimeMillis())
+                .segments(window.size())
+                .recordsBefore(before[1])
+                .recordsAfter(after[1])
+                .bytesBefore(before[0])
+                .bytesAfter(after[0])
+                .ratio(before[0] > 0 ? (double) after[0] / before[0] : 1)
+                .durationMillis(durationMillis)
+                .bytesPerSecond(before[0] * 1000 / durationMillis)
+                .build();
+        compactionStats = stats;
+        log.info("Compacted {} WAL segments up to version {} from {} to {} bytes in {} ms",
+                window.size(), lastVersion, before[0], after[0], durationMillis);
+        return stats;
+    }
+
+    private static List<String> keysOf(RpcRequest request) {
+        return switch (request.getCommandCase()) {
+            case PUT_COMMAND -> request.getPutCommand().getCommandsList().stream().map(PutCommand::getKey).toList();
+            case DELETE_COMMAND -> request.getDeleteCommand().getCommandsList().stream().map(KeyCommand::getKey).toList();
+            default -> Collections.emptyList();
+        };
+    }
+
+    /**
+     * Returns the payload of the record cut down to the keys it was the last
+     * to touch, as logged if it still holds all of them, or null if it holds
+     * none and need not be kept.
+     */
+    private static byte[] liveOf(Record record, Map<String, Long> latest, boolean keep) {
+        RpcRequest request = record.getRequest();
+        long version = record.getVersion();
+        switch (request.getCommandCase()) {
+            case PUT_COMMAND -> {
+                List<PutCommand> commands = request.getPutCommand().getCommandsList();
+                List<PutCommand> live = commands.stream().filter(command -> latest.get(command.getKey()) == version).toList();
+                if (live.size() == commands.size() || (live.isEmpty() && keep)) {
+                    return record.payload;
+                }
+                return live.isEmpty() ? null : request.toBuilder()
+                        .setPutCommand(PutCommandBatch.newBuilder().addAllCommands(live))
+                        .build()
+                        .toByteArray();
+            }
+            case DELETE_COMMAND -> {
+                List<KeyCommand> commands = request.getDeleteCommand().getCommandsList();
+                List<KeyCommand> live = commands.stream().filter(command -> latest.get(command.getKey()) == version).toList();
+                if (live.size() == commands.size() || (live.isEmpty() && keep)) {
+                    return record.payload;
+                }
+                return live.isEmpty() ? null : request.toBuilder()
+                        .setDeleteCommand(KeyCommandBatch.newBuilder().addAllCommands(live))
+                        .build()
+                        .toByteArray();
+            }
+            default -> {
+                return record.payload;
+            }
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     */
+    public void sync() {
+        long target = lastVersion;
+        force(active);
+        syncLock.lock();
+        try {
+            durableVersion = Math.max(durableVersion, target);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    public WalDurability getDurability() {
+        return durability;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public long getLastVersion() {
+        return lastVersion;
+    }
+
+    // Oldest version still held, the WAL cannot serve anything before it
+    public long getFirstVersion() {
+        return segments.firstKey();
+    }
+
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    // Oldest version still served from memory
+    public long getTailFirstVersion() {
+        return tail != null ? tail.getFirstVersion() : lastVersion + 1;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // Outcome of the last compaction, null if none ran yet
+    public CompactionStats getCompactionStats() {
+        return compactionStats;
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (durability != WalDurability.NONE) {
+                force(active);
+            }
+            // Readers still holding a segment close it when done
+            segments.values().forEach(Segment::release);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void append(long version, long timestamp, byte[] payload) {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (active.size > 0 && active.size + recordSize > segmentSize) {
+            roll(version);
+        }
+        ByteBuffer record = encode(version, timestamp, payload);
+        Segment segment = active;
+        long offset = segment.size;
+        try {
+            while (record.hasRemaining()) {
+                segment.channel.write(record, offset + record.position());
+            }
+        } catch (IOException e) {
+            throw new MemoraException("Failed to append to WAL segment " + segment.path, e);
+        }
+        segment.track(version, offset, recordSize);
+        if (tail != null) {
+            tail.append(version, record.rewind());
+        }
+        lastVersion = version;
+    }
+
+    private static ByteBuffer encode(long version, long timestamp, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .putLong(version)
+                .putLong(timestamp)
+                .put(payload)
+                .flip();
+    }
+
+    /**
+     * Writes a record at the offset of a file being built aside, returns its size.
+     */
+    private static int write(FileChannel channel, long offset, long version, long timestamp, byte[] payload) {
+        ByteBuffer record = encode(version, timestamp, payload);
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+        } catch (IOException e) {
+            throw new MemoraException("Failed to write compacted WAL record " + version, e);
+        }
+        return record.limit();
+    }
+
+    /**
+     * Closes the active segment for writes and starts a new one.
+     */
+    private void roll(long nextVersion) {
+        if (durability != WalDurability.NONE) {
+            force(active);
+        }
+        Segment segment = open(nextVersion);
+        segments.put(nextVersion, segment);
+        active = segment;
+    }
+
+    /**
+     * Waits until a sync covers the version, running that sync itself unless
+     * another writer already is.
+     */
+    private void awaitDurable(long version) {
+        syncLock.lock();
+        try {
+            while (durableVersion < version) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = lastVersion;
+                boolean forced = false;
+                syncLock.unlock();
+                try {
+                    force(active);
+                    forced = true;
+                } finally {
+                    syncLock.lock();
+                    if (forced) {
+                        durableVersion = Math.max(durableVersion, target);
+                    }
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void force(Segment segment) {
+        try {
+            segment.channel.force(false);
+        } catch (IOException e) {
+            throw new MemoraException("Failed to sync WAL segment " + segment.path, e);
+        }
+    }
+
+    /**
+     * Reads records from the offset until the limit, a torn or corrupt record
+     * or the visitor asks to stop. Returns the offset after the last record read.
+     */
+    private long scan(Segment segment, long offset, long limit, RecordVisitor visitor) {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        buffer.limit(0);
+        try {
+            while (offset + HEADER_SIZE <= limit) {
+                if (buffer.remaining() < HEADER_SIZE) {
+                    fill(segment, buffer, offset, limit);
+                }
+                int start = buffer.position();
+                int payloadLength = buffer.getInt(start);
+                int recordSize = HEADER_SIZE + payloadLength;
+                if (payloadLength < 0 || offset + recordSize > limit) {
+                    break;
+                }
+                if (buffer.remaining() < recordSize) {
+                    if (recordSize > buffer.capacity()) {
+                        buffer = ByteBuffer.allocate(recordSize);
+                    }
+                    fill(segment, buffer, offset, limit);
+                    start = buffer.position();
+                    if (buffer.remaining() < recordSize) {
+                        break;
+                    }
+                }
+                int checksum = buffer.getInt(start + 4);
+                long version = buffer.getLong(start + 8);
+                long timestamp = buffer.getLong(start + 16);
+                byte[] payload = new byte[payloadLength];
+                buffer.get(start + HEADER_SIZE, payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Corrupt record in WAL segment {} at offset {}", segment.path, offset);
+                    break;
+                }
+                buffer.position(start + recordSize);
+                if (!visitor.visit(new Record(version, timestamp, payload), offset, recordSize)) {
+                    return offset + recordSize;
+                }
+                offset += recordSize;
+            }
+        } catch (IOException e) {
+            throw new MemoraException("Failed to read WAL segment " + segment.path, e);
+        }
+        return offset;
+    }
+
+    /**
+     * Refills the buffer with the segment's bytes from the offset on.
+     */
+    private static void fill(Segment segment, ByteBuffer buffer, long offset, long limit) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), limit - offset));
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = segment.channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Opens the segments found in the directory, cutting off torn tails, and
+     * makes the last one active.
+     */
+    private void recover() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing
+                        .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                        .sorted()
+                        .toList();
+            }
+            Path torn = null; // Segment cut short, only allowed to be the last one
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(COMPACTION_SUFFIX)) {
+                    // Left by a compaction cut short, the segments it was merging are all still there
+                    log.warn("Deleting unfinished WAL compaction {}", path);
+                    Files.delete(path);
+                    continue;
+                }
+                if (!name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                long firstVersion = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                if (firstVersion <= lastVersion) {
+                    // Merged into the segment before it by a compaction that did not get to delete it
+                    log.warn("Deleting WAL segment {} already compacted into the previous one", path);
+                    Files.delete(path);
+                    continue;
+                }
+                if (torn != null) {
+                    throw new MemoraException("WAL segment " + torn + " is corrupt but segment " + path + " follows it");
+                }
+                if (!segments.isEmpty() && firstVersion != lastVersion + 1) {
+                    throw new MemoraException("WAL segment " + path + " starts at version " + firstVersion
+                            + " but the previous one ends at " + lastVersion);
+                }
+                Segment segment = open(firstVersion);
+                long fileSize = segment.channel.size();
+                long end = scan(segment, 0, fileSize, (record, offset, recordSize) -> {
+                    segment.track(record.getVersion(), offset, recordSize);
+                    return true;
+                });
+                if (end < fileSize) {
+                    log.warn("Truncating WAL segment {} from {} to {} bytes", path, fileSize, end);
+                    segment.channel.truncate(end);
+                    torn = path;
+                }
+                segments.put(firstVersion, segment);
+                // An empty segment still tells which version comes next
+                lastVersion = Math.max(lastVersion, Math.max(segment.lastVersion, firstVersion - 1));
+            }
+        } catch (IOException e) {
+            throw new MemoraException("Failed to open WAL in " + directory, e);
+        }
+        if (segments.isEmpty()) {
+            segments.put(lastVersion + 1, open(lastVersion + 1));
+        }
+        active = segments.lastEntry().getValue();
+        durableVersion = lastVersion;
+        log.info("Opened WAL in {} with {} segments up to version {}", directory, segments.size(), lastVersion);
+    }
+
+    private Segment open(long firstVersion) {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstVersion, SEGMENT_SUFFIX));
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, firstVersion, channel);
+        } catch (IOException e) {
+            throw new MemoraException("Failed to open WAL segment " + path, e);
+        }
+    }
+}
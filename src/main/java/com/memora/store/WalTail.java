@@ -0,0 +1,156 @@
+package com.memora.store;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Off-heap ring holding the most recent WAL records exactly as they are laid
+ * out on disk, so a range a replica asks for is copied out in one go instead
+ * of being read back from the segments record by record.
+ *
+ * Records are addressed by a logical offset that only grows, their place in
+ * the ring being that offset modulo its capacity, and may wrap around its end.
+ * Making room for a record drops the oldest ones. Only the WAL's appender
+ * writes, under its append lock. Readers take no lock: they copy what they
+ * need, then check none of it was dropped meanwhile, and otherwise give up so
+ * the caller reads from disk.
+ */
+final class WalTail {
+
+    private static final int INDEX_INTERVAL = 64; // Versions between two entries of the index
+
+    private final ByteBuffer ring;
+    private final int capacity;
+    private final ConcurrentSkipListMap<Long, Long> index; // Logical offsets by version, always holding the oldest record
+    private final byte[] lengthBuffer; // Appender only
+    private volatile long firstVersion; // Oldest record held
+    private volatile long firstOffset;
+    private volatile long lastVersion; // firstVersion - 1 while empty
+    private volatile long endOffset; // After the newest record
+
+    WalTail(int capacity, long lastVersion) {
+        this.ring = ByteBuffer.allocateDirect(capacity);
+        this.capacity = capacity;
+        this.index = new ConcurrentSkipListMap<>();
+        this.lengthBuffer = new byte[Integer.BYTES];
+        this.firstVersion = lastVersion + 1;
+        this.lastVersion = lastVersion;
+    }
+
+    /**
+     * Adds the record, serialized as on disk, dropping the oldest ones to
+     * make room. Versions are expected one after the other.
+     */
+    void append(long version, ByteBuffer record) {
+        int size = record.remaining();
+        if (size > capacity || version != lastVersion + 1) {
+            // Cannot be held contiguously with the others, start over after it
+            index.clear();
+            firstOffset = endOffset;
+            firstVersion = version + 1;
+            lastVersion = version;
+            return;
+        }
+        long end = endOffset;
+        while (end + size - firstOffset > capacity) {
+            dropOldest();
+        }
+        // Dropped offsets must be visible before the bytes they held get overwritten
+        VarHandle.storeStoreFence();
+        int position = (int) (end % capacity);
+        int first = Math.min(size, capacity - position);
+        ring.put(position, record.array(), record.arrayOffset() + record.position(), first);
+        if (first < size) {
+            ring.put(0, record.array(), record.arrayOffset() + record.position() + first, size - first);
+        }
+        if (version == firstVersion || version % INDEX_INTERVAL == 0) {
+            index.put(version, end);
+        }
+        endOffset = end + size;
+        lastVersion = version;
+    }
+
+    /**
+     * Returns the records from one version up to another, as laid out on
+     * disk and at most maxBytes long unless the first record alone is larger,
+     * or null if the first of them is no longer held.
+     */
+    byte[] read(long fromVersion, long toVersion, int maxBytes) {
+        long last = lastVersion;
+        long end = endOffset;
+        if (fromVersion < firstVersion || fromVersion > last) {
+            return null;
+        }
+        Map.Entry<Long, Long> entry = index.floorEntry(fromVersion);
+        if (entry == null) {
+            return null;
+        }
+        long indexedOffset = entry.getValue();
+        byte[] header = new byte[WAL.HEADER_SIZE];
+
+        // Walk from the indexed record to the first one asked for
+        long start = indexedOffset;
+        for (long version = entry.getKey(); version < fromVersion; version++) {
+            if (start + WAL.HEADER_SIZE > end) {
+                return null;
+            }
+            copy(start, header, 0, WAL.HEADER_SIZE);
+            int payloadLength = ByteBuffer.wrap(header).getInt(0);
+            if (payloadLength < 0) {
+                return null;
+            }
+            start += WAL.HEADER_SIZE + payloadLength;
+        }
+        if (start + WAL.HEADER_SIZE > end) {
+            return null;
+        }
+        copy(start, header, 0, WAL.HEADER_SIZE);
+        int firstRecord = WAL.HEADER_SIZE + ByteBuffer.wrap(header).getInt(0);
+        if (firstRecord < WAL.HEADER_SIZE || start + firstRecord > end) {
+            return null;
+        }
+
+        int length = (int) Math.min(end - start, Math.max(maxBytes, firstRecord));
+        byte[] frame = new byte[length];
+        copy(start, frame, 0, length);
+        // Anything read above is only trusted if the appender did not drop it meanwhile
+        VarHandle.loadLoadFence();
+        if (firstOffset > indexedOffset) {
+            return null;
+        }
+        int whole = WAL.frameLength(frame, length, toVersion);
+        return whole == length ? frame : Arrays.copyOf(frame, whole);
+    }
+
+    long getFirstVersion() {
+        return firstVersion;
+    }
+
+    long getSize() {
+        return endOffset - firstOffset;
+    }
+
+    private void dropOldest() {
+        copy(firstOffset, lengthBuffer, 0, Integer.BYTES);
+        int size = WAL.HEADER_SIZE + ByteBuffer.wrap(lengthBuffer).getInt(0);
+        long dropped = firstVersion;
+        index.remove(dropped);
+        firstOffset += size;
+        firstVersion = dropped + 1;
+        if (dropped + 1 <= lastVersion) {
+            index.putIfAbsent(dropped + 1, firstOffset);
+        }
+    }
+
+    private void copy(long offset, byte[] destination, int destinationOffset, int length) {
+        int position = (int) (offset % capacity);
+        int first = Math.min(length, capacity - position);
+        ring.get(position, destination, destinationOffset, first);
+        if (first < length) {
+            ring.get(0, destination, destinationOffset + first, length - first);
+        }
+    }
+}
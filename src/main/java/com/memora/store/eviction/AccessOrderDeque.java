@@ -0,0 +1,193 @@
+package com.memora.store.eviction;
+
+/**
+ * Weighted doubly-linked deque of keys with O(1) lookup of the oldest and
+ * newest key. Not thread-safe, callers guard it with their own lock.
+ *
+ * Nodes are chained in the deque's own hash table rather than held by a
+ * HashMap, so a key costs one node instead of a node and a map entry.
+ */
+class AccessOrderDeque {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static class Node {
+
+        final String key;
+        final int hash;
+        long weight;
+        Node prev, next;
+        Node chained; // Next node in the same hash table bin
+
+        Node(String key, int hash, long weight) {
+            this.key = key;
+            this.hash = hash;
+            this.weight = weight;
+        }
+    }
+
+    private Node[] table = new Node[INITIAL_CAPACITY];
+    private int size;
+    private Node head, tail;
+    private long totalWeight;
+
+    boolean contains(String key) {
+        return find(key) != null;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long weight() {
+        return totalWeight;
+    }
+
+    String first() {
+        return (head != null) ? head.key : null;
+    }
+
+    String last() {
+        return (tail != null) ? tail.key : null;
+    }
+
+    /**
+     * Appends the key at the end, or moves it there and updates its weight if present.
+     */
+    void addLast(String key, long weight) {
+        Node node = find(key);
+        if (node == null) {
+            node = new Node(key, hash(key), weight);
+            insert(node);
+            totalWeight += weight;
+            link(node);
+            return;
+        }
+        totalWeight += weight - node.weight;
+        node.weight = weight;
+        moveToLast(node);
+    }
+
+    /**
+     * Moves the key to the end if present, returns whether it was.
+     */
+    boolean moveToLast(String key) {
+        Node node = find(key);
+        if (node == null) {
+            return false;
+        }
+        moveToLast(node);
+        return true;
+    }
+
+    /**
+     * Removes the key and returns its weight, or -1 if it was not present.
+     */
+    long remove(String key) {
+        Node node = detach(key);
+        if (node == null) {
+            return -1;
+        }
+        unlink(node);
+        totalWeight -= node.weight;
+        return node.weight;
+    }
+
+    private Node find(String key) {
+        int hash = hash(key);
+        for (Node node = table[hash & (table.length - 1)]; node != null; node = node.chained) {
+            if (node.hash == hash && node.key.equals(key)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void insert(Node node) {
+        if (++size > table.length * 3 / 4) {
+            resize();
+        }
+        int bin = node.hash & (table.length - 1);
+        node.chained = table[bin];
+        table[bin] = node;
+    }
+
+    /**
+     * Takes the key's node out of the hash table, leaving it linked in the deque.
+     */
+    private Node detach(String key) {
+        int hash = hash(key);
+        int bin = hash & (table.length - 1);
+        Node previous = null;
+        for (Node node = table[bin]; node != null; previous = node, node = node.chained) {
+            if (node.hash == hash && node.key.equals(key)) {
+                if (previous == null) {
+                    table[bin] = node.chained;
+                } else {
+                    previous.chained = node.chained;
+                }
+                node.chained = null;
+                size--;
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private void resize() {
+        Node[] old = table;
+        table = new Node[old.length * 2];
+        for (Node bin : old) {
+            while (bin != null) {
+                Node next = bin.chained;
+                int index = bin.hash & (table.length - 1);
+                bin.chained = table[index];
+                table[index] = bin;
+                bin = next;
+            }
+        }
+    }
+
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private void moveToLast(Node node) {
+        if (node == tail) {
+            return;
+        }
+        unlink(node);
+        link(node);
+    }
+
+    private void link(Node node) {
+        node.prev = tail;
+        node.next = null;
+        if (tail != null) {
+            tail.next = node;
+        } else {
+            head = node;
+        }
+        tail = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            head = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            tail = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+}
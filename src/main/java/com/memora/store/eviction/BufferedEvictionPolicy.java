@@ -0,0 +1,83 @@
+package com.memora.store.eviction;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.memora.utils.StripedBuffer;
+
+/**
+ * Makes a single-threaded policy safe to call from every event-loop thread
+ * without serialising the callers on one lock.
+ *
+ * Reads are recorded in per-thread ring buffers and may be dropped under
+ * pressure, losing only a little recency. Writes and removals go to an
+ * ordered queue and are never dropped; since a bucket records them inside
+ * the per-key store operation, the queue keeps the per-key order. Whoever
+ * wins a try-lock replays both buffers into the policy in a batch, and
+ * {@link #selectVictim()} always drains fully first so the victim reflects
+ * every completed write.
+ */
+public class BufferedEvictionPolicy implements EvictionPolicy {
+
+    private final EvictionPolicy delegate; // Only touched while holding drainLock
+    private final StripedBuffer<String> readBuffer;
+    private final ConcurrentLinkedQueue<Runnable> writeBuffer;
+    private final ReentrantLock drainLock;
+
+    public BufferedEvictionPolicy(EvictionPolicy delegate) {
+        this.delegate = delegate;
+        this.readBuffer = new StripedBuffer<>();
+        this.writeBuffer = new ConcurrentLinkedQueue<>();
+        this.drainLock = new ReentrantLock();
+    }
+
+    @Override
+    public void onAccess(String key) {
+        if (readBuffer.offer(key) == StripedBuffer.FULL) {
+            tryDrain();
+        }
+    }
+
+    @Override
+    public void onWrite(String key, long weight) {
+        writeBuffer.offer(() -> delegate.onWrite(key, weight));
+        tryDrain();
+    }
+
+    @Override
+    public void onRemove(String key) {
+        writeBuffer.offer(() -> delegate.onRemove(key));
+        tryDrain();
+    }
+
+    @Override
+    public String selectVictim() {
+        drainLock.lock();
+        try {
+            drain();
+            return delegate.selectVictim();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private void tryDrain() {
+        // Checking first keeps threads that lose the race off the lock's cache line
+        if (drainLock.isLocked() || !drainLock.tryLock()) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private void drain() {
+        readBuffer.drainTo(delegate::onAccess);
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            task.run();
+        }
+    }
+}
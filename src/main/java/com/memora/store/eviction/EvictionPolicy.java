@@ -0,0 +1,44 @@
+package com.memora.store.eviction;
+
+import com.memora.enums.EvictionStrategy;
+
+/**
+ * Decides which key a bucket should drop when it goes over its memory budget.
+ *
+ * A bucket notifies its policy from inside the per-key store operation, so
+ * for a single key the calls always arrive in the order they were applied.
+ * Implementations are single-threaded; {@link #create(EvictionStrategy, long)}
+ * wraps them in a {@link BufferedEvictionPolicy} which batches calls from
+ * concurrent writers.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * A key already present in the bucket was read.
+     */
+    void onAccess(String key);
+
+    /**
+     * A key was inserted or overwritten with an entry of the given weight.
+     */
+    void onWrite(String key, long weight);
+
+    /**
+     * A key was removed from the bucket (delete, expiry or eviction).
+     */
+    void onRemove(String key);
+
+    /**
+     * Returns the key that should be evicted next, or null if nothing is tracked.
+     */
+    String selectVictim();
+
+    static EvictionPolicy create(EvictionStrategy strategy, long maxBytes) {
+        EvictionPolicy policy = switch (strategy) {
+            case LRU -> new LRUPolicy();
+            case LFU -> new LFUPolicy();
+            case TINY_LFU -> new WindowTinyLFUPolicy(maxBytes);
+        };
+        return new BufferedEvictionPolicy(policy);
+    }
+}
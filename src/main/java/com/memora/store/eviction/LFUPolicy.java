@@ -0,0 +1,69 @@
+package com.memora.store.eviction;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts the least frequently used key, breaking ties by the oldest access
+ * within the same frequency.
+ */
+public class LFUPolicy implements EvictionPolicy {
+
+    private final Map<String, Integer> frequencies;
+    private final TreeMap<Integer, LinkedHashSet<String>> keysByFrequency;
+
+    public LFUPolicy() {
+        this.frequencies = new HashMap<>();
+        this.keysByFrequency = new TreeMap<>();
+    }
+
+    @Override
+    public void onAccess(String key) {
+        Integer frequency = frequencies.get(key);
+        if (frequency != null) {
+            promote(key, frequency);
+        }
+    }
+
+    @Override
+    public void onWrite(String key, long weight) {
+        Integer frequency = frequencies.get(key);
+        if (frequency != null) {
+            promote(key, frequency);
+            return;
+        }
+        frequencies.put(key, 1);
+        keysByFrequency.computeIfAbsent(1, f -> new LinkedHashSet<>()).add(key);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        Integer frequency = frequencies.remove(key);
+        if (frequency != null) {
+            unlink(key, frequency);
+        }
+    }
+
+    @Override
+    public String selectVictim() {
+        Map.Entry<Integer, LinkedHashSet<String>> least = keysByFrequency.firstEntry();
+        return (least != null) ? least.getValue().iterator().next() : null;
+    }
+
+    private void promote(String key, int frequency) {
+        unlink(key, frequency);
+        int next = frequency == Integer.MAX_VALUE ? frequency : frequency + 1;
+        frequencies.put(key, next);
+        keysByFrequency.computeIfAbsent(next, f -> new LinkedHashSet<>()).add(key);
+    }
+
+    private void unlink(String key, int frequency) {
+        LinkedHashSet<String> keys = keysByFrequency.get(frequency);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            keysByFrequency.remove(frequency);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.memora.store.eviction;
+
+/**
+ * Evicts the least recently read or written key.
+ */
+public class LRUPolicy implements EvictionPolicy {
+
+    private final AccessOrderDeque recency;
+
+    public LRUPolicy() {
+        this.recency = new AccessOrderDeque();
+    }
+
+    @Override
+    public void onAccess(String key) {
+        recency.moveToLast(key);
+    }
+
+    @Override
+    public void onWrite(String key, long weight) {
+        recency.addLast(key, weight);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        recency.remove(key);
+    }
+
+    @Override
+    public String selectVictim() {
+        return recency.first();
+    }
+}
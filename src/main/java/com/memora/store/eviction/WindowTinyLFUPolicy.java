@@ -0,0 +1,104 @@
+package com.memora.store.eviction;
+
+/**
+ * W-TinyLFU: new keys land in a small LRU window, keys pushed out of the window
+ * go to the probation segment of a segmented LRU, and a key read while on
+ * probation is promoted to the protected segment.
+ *
+ * When the bucket needs room, the newest key on probation (the candidate)
+ * competes with the oldest one (the victim) and the one the frequency sketch
+ * has seen less often is evicted. This keeps one-hit wonders from flushing
+ * out keys that are read often.
+ */
+public class WindowTinyLFUPolicy implements EvictionPolicy {
+
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.8;
+    private static final long AVERAGE_ENTRY_SIZE = 256;
+
+    private final long windowMax;
+    private final long protectedMax;
+
+    private final AccessOrderDeque window;
+    private final AccessOrderDeque probation;
+    private final AccessOrderDeque protectedRegion;
+    private final FrequencySketch sketch;
+
+    public WindowTinyLFUPolicy(long maxBytes) {
+        this.windowMax = Math.max(1, (long) (maxBytes * WINDOW_RATIO));
+        this.protectedMax = (long) ((maxBytes - windowMax) * PROTECTED_RATIO);
+        this.window = new AccessOrderDeque();
+        this.probation = new AccessOrderDeque();
+        this.protectedRegion = new AccessOrderDeque();
+        this.sketch = new FrequencySketch(maxBytes / AVERAGE_ENTRY_SIZE);
+    }
+
+    @Override
+    public void onAccess(String key) {
+        sketch.increment(key);
+        if (window.moveToLast(key)) {
+            return;
+        }
+        long weight = probation.remove(key);
+        if (weight >= 0) {
+            protectedRegion.addLast(key, weight);
+            demoteProtected();
+            return;
+        }
+        protectedRegion.moveToLast(key);
+    }
+
+    @Override
+    public void onWrite(String key, long weight) {
+        sketch.increment(key);
+        if (window.contains(key)) {
+            window.addLast(key, weight);
+        } else if (probation.remove(key) >= 0 || protectedRegion.contains(key)) {
+            protectedRegion.addLast(key, weight);
+            demoteProtected();
+        } else {
+            window.addLast(key, weight);
+        }
+        evictWindow();
+    }
+
+    @Override
+    public void onRemove(String key) {
+        if (window.remove(key) < 0 && probation.remove(key) < 0) {
+            protectedRegion.remove(key);
+        }
+    }
+
+    @Override
+    public String selectVictim() {
+        if (probation.isEmpty()) {
+            return !protectedRegion.isEmpty() ? protectedRegion.first() : window.first();
+        }
+        String victim = probation.first();
+        String candidate = probation.last();
+        if (victim.equals(candidate)) {
+            return victim;
+        }
+        return sketch.frequency(candidate) > sketch.frequency(victim) ? victim : candidate;
+    }
+
+    /**
+     * Moves keys that overflow the window to the probation segment.
+     */
+    private void evictWindow() {
+        while (window.weight() > windowMax && window.size() > 1) {
+            String key = window.first();
+            probation.addLast(key, window.remove(key));
+        }
+    }
+
+    /**
+     * Moves keys that overflow the protected segment back to probation.
+     */
+    private void demoteProtected() {
+        while (protectedRegion.weight() > protectedMax && protectedRegion.size() > 1) {
+            String key = protectedRegion.first();
+            probation.addLast(key, protectedRegion.remove(key));
+        }
+    }
+}
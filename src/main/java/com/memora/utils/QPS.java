@@ -10,7 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class QPS {
 
-    private static QPS INSTANCE;
+    private static volatile QPS INSTANCE;
 
     private final AtomicInteger qps = new AtomicInteger(0);
     private volatile int lastSecondQps = 0;
@@ -27,6 +27,10 @@ public final class QPS {
         threadPoolService.submitEvery(ThreadPool.GENERAL_THREAD_POOL, QPS.INSTANCE::rotate, 1);
     }
 
+    public static boolean isInitialized() {
+        return INSTANCE != null;
+    }
+
     public static QPS getInstance() {
         if (INSTANCE == null) {
             throw new IllegalStateException("QPS not initialized. Call initialize() first.");
@@ -44,6 +48,13 @@ public final class QPS {
         qps.incrementAndGet();
     }
 
+    /**
+     * Requests counted so far in the current second.
+     */
+    public int getCurrent() {
+        return qps.get();
+    }
+
     public int get() {
         return lastSecondQps;
     }
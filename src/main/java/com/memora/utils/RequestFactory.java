@@ -11,13 +11,20 @@ import com.memora.messages.KeyCommand;
 import com.memora.messages.KeyCommandBatch;
 import com.memora.messages.NodeAddress;
 import com.memora.messages.NodeCommand;
+import com.memora.messages.NodeCommand.CatchUpCommand;
 import com.memora.messages.NodeCommand.PrimarizeCommand;
 import com.memora.messages.NodeCommand.ReplicateCommand;
 import com.memora.messages.PutCommand; // Renamed for clarity from KeyValueCommand
 import com.memora.messages.PutCommandBatch;
+import com.memora.messages.ReplicationBatch;
+import com.memora.messages.ReplicationRecord;
 import com.memora.messages.RpcRequest;
+import com.memora.messages.WalCommand;
+import com.memora.messages.WalCommand.RangeRequest;
+import com.memora.model.CacheEntry;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.regex.Matcher;
@@ -139,6 +146,14 @@ public final class RequestFactory {
                         }
                         nodeCmdBuilder.setPrimarize(primarizeBuilder);
                         break;
+                    case "CATCHUP":
+                        if (tokens.size() != 4) {
+                            throw new IllegalArgumentException("Usage: NODE CATCHUP <from> <to>");
+                        }
+                        nodeCmdBuilder.setCatchUp(CatchUpCommand.newBuilder()
+                                .setFromVersion(parseVersion(tokens.get(2)))
+                                .setToVersion(parseVersion(tokens.get(3))));
+                        break;
                     default:
                         throw new IllegalArgumentException("Unsupported NODE subcommand: " + subCommand);
                 }
@@ -173,6 +188,17 @@ public final class RequestFactory {
                 }
                 requestBuilder.setInfoCommand(infoCmdBuilder);
             }
+            case WAL -> {
+                boolean zeroCopy = tokens.size() == 5 && "ZEROCOPY".equalsIgnoreCase(tokens.get(4));
+                if ((tokens.size() != 4 && !zeroCopy) || !"RANGE".equalsIgnoreCase(tokens.get(1))) {
+                    throw new IllegalArgumentException("Usage: WAL RANGE <from> <to> [ZEROCOPY]");
+                }
+                requestBuilder.setWalCommand(WalCommand.newBuilder()
+                        .setRange(RangeRequest.newBuilder()
+                                .setFromVersion(parseVersion(tokens.get(2)))
+                                .setToVersion(parseVersion(tokens.get(3)))
+                                .setZeroCopy(zeroCopy)));
+            }
             default ->
                 throw new IllegalArgumentException("Unsupported operation: " + operation);
         }
@@ -182,6 +208,71 @@ public final class RequestFactory {
         return requestBuilder.setCorrelationId(correlationId);
     }
 
+    /**
+     * Builds a PUT of the given entries directly, keeping their raw value bytes
+     * and absolute expiry instead of going through the text command parser.
+     */
+    public static RpcRequest.Builder createPutRequest(Collection<CacheEntry> entries) {
+        PutCommandBatch.Builder batchBuilder = PutCommandBatch.newBuilder();
+        for (CacheEntry entry : entries) {
+            PutCommand.Builder putCmdBuilder = PutCommand.newBuilder()
+                    .setKey(entry.getKey())
+                    .setValue(entry.getValue());
+            if (entry.getTtl() != -1) {
+                putCmdBuilder.setExpireAtTimestamp(entry.getTtl());
+            }
+            batchBuilder.addCommands(putCmdBuilder);
+        }
+        return RpcRequest.newBuilder()
+                .setPutCommand(batchBuilder)
+                .setCorrelationId(UUID.randomUUID().toString());
+    }
+
+    /**
+     * Builds a GET of the given keys directly.
+     */
+    public static RpcRequest.Builder createGetRequest(Collection<String> keys) {
+        return RpcRequest.newBuilder()
+                .setGetCommand(keyBatch(keys))
+                .setCorrelationId(UUID.randomUUID().toString());
+    }
+
+    /**
+     * Builds a DELETE of the given keys directly.
+     */
+    public static RpcRequest.Builder createDeleteRequest(Collection<String> keys) {
+        return RpcRequest.newBuilder()
+                .setDeleteCommand(keyBatch(keys))
+                .setCorrelationId(UUID.randomUUID().toString());
+    }
+
+    /**
+     * Copies a request to send on to another node, under a correlation ID of
+     * its own: the original may have none, as RESP requests do, or clash
+     * with one the node itself sent.
+     */
+    public static RpcRequest.Builder createForwardedRequest(RpcRequest request) {
+        return request.toBuilder()
+                .setCorrelationId(UUID.randomUUID().toString());
+    }
+
+    /**
+     * Builds a batch of a primary's replication stream.
+     */
+    public static RpcRequest.Builder createReplicationRequest(Collection<ReplicationRecord> records) {
+        return RpcRequest.newBuilder()
+                .setReplicationBatch(ReplicationBatch.newBuilder().addAllRecords(records))
+                .setCorrelationId(UUID.randomUUID().toString());
+    }
+
+    private static KeyCommandBatch.Builder keyBatch(Collection<String> keys) {
+        KeyCommandBatch.Builder batchBuilder = KeyCommandBatch.newBuilder();
+        for (String key : keys) {
+            batchBuilder.addCommands(KeyCommand.newBuilder().setKey(key));
+        }
+        return batchBuilder;
+    }
+
     /**
      * Parses a "host:port" string into a NodeAddress object.
      */
@@ -198,6 +289,14 @@ public final class RequestFactory {
         }
     }
 
+    private static long parseVersion(String version) {
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid version: '" + version + "'");
+        }
+    }
+
     /**
      * Helper to remove matching single or double quotes from the start and end of a string.
      */
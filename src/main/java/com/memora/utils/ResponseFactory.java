@@ -1,5 +1,9 @@
 package com.memora.utils;
 
+import java.util.List;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.memora.messages.RpcRequest;
 import com.memora.messages.RpcResponse;
 import com.memora.messages.RpcStatus;
@@ -29,6 +33,33 @@ public final class ResponseFactory {
         return withStatus(status).setCorrelationId(request.getCorrelationId()).setResponse(message.toString()).build();
     }
 
+    /**
+     * Creates a response carrying a stored value as raw bytes.
+     */
+    public static RpcResponse create(RpcStatus status, RpcRequest request, ByteString value) {
+        return withStatus(status).setCorrelationId(request.getCorrelationId()).setValue(value).build();
+    }
+
+    /**
+     * Creates a response carrying the raw values of a batch read, one per
+     * key, with the bitmap of the keys found.
+     */
+    public static RpcResponse create(RpcStatus status, RpcRequest request, List<ByteString> values, byte[] found) {
+        return withStatus(status)
+                .setCorrelationId(request.getCorrelationId())
+                .addAllValues(values)
+                .setFound(UnsafeByteOperations.unsafeWrap(found))
+                .build();
+    }
+
+    /**
+     * Whether the i-th key of a batch read was found.
+     */
+    public static boolean isFound(RpcResponse response, int index) {
+        ByteString found = response.getFound();
+        return (index >> 3) < found.size() && (found.byteAt(index >> 3) & (1 << (index & 7))) != 0;
+    }
+
     public static RpcResponse.Builder builder() {
         return RpcResponse.newBuilder();
     }
@@ -133,7 +133,7 @@ public final class Router {
 
     public static int getBucketIndex(String key, int numBuckets) {
         int bucketIndex = jumpConsistentHash(key, numBuckets);
-        log.info("Found bucket {} for key: {} out of {} buckets", bucketIndex, key, numBuckets);
+        log.trace("Found bucket {} for key: {} out of {} buckets", bucketIndex, key, numBuckets);
         return bucketIndex;
     }
 }
@@ -0,0 +1,91 @@
+package com.memora.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lossy multi-producer, single-consumer buffer split into small ring buffers.
+ * A producer picks its ring by thread, so threads on different cores rarely
+ * touch the same cache line. When a ring is full or a slot is contended the
+ * element is dropped, which is fine for hints such as "this key was read".
+ *
+ * Only one thread at a time may call {@link #drainTo(Consumer)}.
+ */
+public final class StripedBuffer<E> {
+
+    public static final int SUCCESS = 0;
+    public static final int FULL = 1;
+    public static final int FAILED = 2;
+
+    private static final int BUFFER_SIZE = 16;
+    private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+    private static final int MAX_STRIPES = 64;
+
+    private static final class Stripe {
+
+        final AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter; // Written only by the draining thread
+    }
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public StripedBuffer() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int count = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, cpus - 1)) << 1);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Adds the element to the calling thread's ring.
+     *
+     * @return SUCCESS, FULL when the ring needs draining (the element may still
+     * have been added), or FAILED when the element was dropped due to contention.
+     */
+    public int offer(E element) {
+        Stripe stripe = stripes[stripeIndex()];
+        long head = stripe.readCounter;
+        long tail = stripe.writeCounter.get();
+        if (tail - head >= BUFFER_SIZE) {
+            return FULL;
+        }
+        if (!stripe.writeCounter.compareAndSet(tail, tail + 1)) {
+            return FAILED;
+        }
+        stripe.buffer.lazySet((int) (tail & BUFFER_MASK), element);
+        return (tail + 1 - head >= BUFFER_SIZE) ? FULL : SUCCESS;
+    }
+
+    /**
+     * Hands every published element to the consumer and frees its slot.
+     */
+    @SuppressWarnings("unchecked")
+    public void drainTo(Consumer<E> consumer) {
+        for (Stripe stripe : stripes) {
+            long head = stripe.readCounter;
+            long tail = stripe.writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & BUFFER_MASK);
+                Object element = stripe.buffer.get(index);
+                if (element == null) {
+                    // Slot claimed but not yet published, pick it up on the next drain
+                    break;
+                }
+                stripe.buffer.lazySet(index, null);
+                consumer.accept((E) element);
+            }
+            stripe.readCounter = head;
+        }
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & stripeMask;
+    }
+}